@@ -0,0 +1,115 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stream of occupancy changes, one {@link Batch} per tick that changed or blocked anything.
+ *
+ * Attach one with {@link InterlockingImpl#setChangeFeed}. The engine builds a batch in its
+ * commit phase, and only while someone is subscribed. A batch holds exactly the sections
+ * and trains the tick touched, so a subscriber's work is proportional to the change, not
+ * to the corridor.
+ *
+ * Delivery goes through a {@link SubmissionPublisher}: each subscriber has its own bounded
+ * buffer and pulls with {@code request(n)}. When a buffer is full the feed either blocks
+ * the tick until the subscriber catches up (the default), or, when lossy, drops the batch
+ * for that subscriber and counts it in {@link #dropped()}. Batches are numbered
+ * consecutively, so a lossy subscriber sees a gap in {@link Batch#seq()}.
+ */
+public final class ChangeFeed implements Flow.Publisher<ChangeFeed.Batch>, AutoCloseable {
+
+    // Event kinds.
+    public static final int ENTER=0, VACATE=1, EXIT=2, BLOCKED=3;
+    static final String[] KINDS={"enter","vacate","exit","blocked"};
+
+    private final SubmissionPublisher<Batch> pub;
+    private final boolean lossy;
+    private final LongAdder dropped=new LongAdder();
+    private long seq;
+
+    /** Blocking feed delivered on the common pool, with the JDK's default buffer. */
+    public ChangeFeed(){ this(ForkJoinPool.commonPool(), Flow.defaultBufferSize(), false); }
+
+    /**
+     * @param executor runs subscriber callbacks
+     * @param buffer   batches buffered per subscriber (rounded up to a power of two)
+     * @param lossy    drop batches for a full subscriber instead of blocking the tick
+     */
+    public ChangeFeed(Executor executor, int buffer, boolean lossy){
+        pub=new SubmissionPublisher<>(executor, buffer);
+        this.lossy=lossy;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Batch> s){ pub.subscribe(s); }
+
+    /** Batches a lossy feed dropped because a subscriber's buffer was full. */
+    public long dropped(){ return dropped.sum(); }
+
+    /** Completes every subscriber; later ticks publish nothing. */
+    @Override
+    public void close(){ pub.close(); }
+
+    boolean active(){ return pub.hasSubscribers() && !pub.isClosed(); }
+
+    /** Numbers and hands off one batch; synchronized so numbering matches delivery order. */
+    synchronized void publish(Batch b){
+        b.seq=++seq;
+        if (lossy) pub.offer(b, (s,x) -> { dropped.increment(); return false; });
+        else pub.submit(b);
+    }
+
+    /**
+     * The events of one tick, as columns indexed 0..size()-1. A move is a VACATE of the old
+     * section then an ENTER of the new one; an exit is a VACATE then an EXIT (section -1).
+     * A BLOCKED event names the section the train stayed in and why it stayed, using the
+     * reason constants of {@link TickMetrics}. All other events have reason -1.
+     *
+     * Handles may be recycled when retention is on, so the train's name is carried too.
+     */
+    public static final class Batch {
+        long seq;
+        int size;
+        byte[] kind;
+        int[] train, section;
+        byte[] reason;
+        String[] name;
+
+        Batch(int cap){
+            kind=new byte[cap]; train=new int[cap]; section=new int[cap];
+            reason=new byte[cap]; name=new String[cap];
+        }
+
+        void add(int k, int t, int s, int r, String nm){
+            kind[size]=(byte)k; train[size]=t; section[size]=s; reason[size]=(byte)r; name[size]=nm;
+            size++;
+        }
+
+        /** 1 for the first batch this feed published, then consecutive. */
+        public long seq(){ return seq; }
+        public int size(){ return size; }
+        public int kind(int i){ return kind[check(i)]; }
+        public int train(int i){ return train[check(i)]; }
+        public int section(int i){ return section[check(i)]; }
+        public int reason(int i){ return reason[check(i)]; }
+        public String name(int i){ return name[check(i)]; }
+
+        private int check(int i){
+            if (i<0 || i>=size) throw new IndexOutOfBoundsException(i);
+            return i;
+        }
+
+        @Override
+        public String toString(){
+            StringBuilder sb=new StringBuilder("#").append(seq);
+            for (int i=0;i<size;i++){
+                sb.append(' ').append(KINDS[kind[i]]).append('(').append(name[i]).append(',').append(section[i]);
+                if (reason[i]>=0) sb.append(',').append(TickMetrics.REASONS[reason[i]]);
+                sb.append(')');
+            }
+            return sb.toString();
+        }
+    }
+}
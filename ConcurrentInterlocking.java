@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe interlocking for many dispatcher threads.
+ *
+ * Sections are split into contiguous id blocks, one lock per block, so a corridor
+ * region maps onto a few locks. {@code moveTrains} locks the blocks holding every
+ * listed train's current and target section, in ascending order, then runs the normal
+ * tick: calls over disjoint regions proceed in parallel, while calls that share a
+ * section (and so could chain into, swap with or cross each other) are serialised and
+ * each one stays atomic. Every tick uses a per-thread workspace.
+ *
+ * {@code getSection}/{@code getTrain} take no lock at all: occupancy and positions are
+ * published with release stores and read with acquire loads. A reader may see a chained
+ * move half applied (the leader vacated, the follower not yet arrived) but never two
+ * trains in one section.
+ *
+ * Train columns are sized once, so the number of trains ever added is capped by the
+ * constructor's {@code capacity}.
+ */
+public class ConcurrentInterlocking extends InterlockingImpl {
+
+    private final ReentrantLock[] stripes;
+    private final int block;                     // sections per stripe
+    private final Object addLock=new Object();
+    private volatile int epoch;                 // bumped, under every stripe, by each topology change
+
+    /** per-thread tick workspace plus lock bookkeeping */
+    private static final class Local {
+        final Workspace ws;
+        int[] locks=new int[32], seen=new int[16];
+        Local(Topology topo){ ws=new Workspace(topo); }
+    }
+    private final ThreadLocal<Local> locals;
+
+    public ConcurrentInterlocking(Topology topo, int capacity){
+        this(topo, capacity, 4*Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConcurrentInterlocking(Topology topo, int capacity, int stripeCount){
+        super(topo, new ConcurrentHashMap<>(), capacity);
+        if (stripeCount<1) throw new IllegalArgumentException("stripeCount must be positive");
+        stripeCount=Math.min(stripeCount, topo.sections());
+        block=(topo.sections()+stripeCount-1)/stripeCount;
+        stripes=new ReentrantLock[(topo.sections()+block-1)/block];
+        for (int i=0;i<stripes.length;i++) stripes[i]=new ReentrantLock();
+        locals=ThreadLocal.withInitial(() -> new Local(topo));
+    }
+
+    private int stripe(int s){ return (s-topo.min)/block; }
+
+    // ----- Lock-free reads -----
+
+    @Override
+    public int getSectionHandle(int sectionId) throws IllegalArgumentException {
+        checkSection(sectionId);
+        return (int)INTS.getAcquire(occ, sectionId);
+    }
+
+    @Override
+    public String getSection(int sectionId) throws IllegalArgumentException {
+        int h=getSectionHandle(sectionId);
+        return h<0 ? null : tName[h];
+    }
+
+    @Override
+    public int getTrain(int h) throws IllegalArgumentException {
+        checkHandle(h);
+        return (int)INTS.getAcquire(tCur, h);
+    }
+
+    // ----- Writers -----
+
+    @Override
+    public int addTrainHandle(String name, int entry, int dest, int trainClass)
+            throws IllegalArgumentException, IllegalStateException {
+        checkSection(entry);
+        synchronized (addLock){
+            ReentrantLock l=stripes[stripe(entry)];
+            l.lock();
+            try { return super.addTrainHandle(name,entry,dest,trainClass); }
+            finally { l.unlock(); }
+        }
+    }
+
+    @Override
+    void growTrains(){
+        throw new IllegalStateException("train capacity "+tName.length+" reached");
+    }
+
+    @Override
+    public int moveTrains(String[] names) throws IllegalArgumentException {
+        if (names==null || names.length==0) return 0;
+        long t0=metrics()!=null ? System.nanoTime() : 0;
+        Local l=locals.get();
+        int[] hs=l.ws.byName(names.length);
+        return lockedTick(hs, resolveNames(names,hs), l, t0);
+    }
+
+    @Override
+    public int moveTrains(int[] hs) throws IllegalArgumentException {
+        if (hs==null || hs.length==0) return 0;
+        long t0=metrics()!=null ? System.nanoTime() : 0;
+        checkPresent(hs,hs.length);
+        return lockedTick(hs, hs.length, locals.get(), t0);
+    }
+
+    // ----- Whole-corridor operations -----
+    // These hold every stripe (and the add lock), so they see and leave the whole corridor atomically.
+
+    private void lockAll(){ for (ReentrantLock l: stripes) l.lock(); }
+    private void unlockAll(){ for (int i=stripes.length-1;i>=0;i--) stripes[i].unlock(); }
+
+    @Override
+    Simulation simulate(int ticks, int[][] schedule){
+        lockAll();
+        try { return super.simulate(ticks,schedule); }
+        finally { unlockAll(); }
+    }
+
+    /** Not supported: the plans are played out on live columns that readers see without locks. */
+    @Override
+    public void setLookahead(int horizon, long budgetNanos){
+        throw new UnsupportedOperationException("lookahead needs the single-threaded engine");
+    }
+
+    @Override
+    public void setRetention(int maxExited, long maxAgeTicks){
+        synchronized (addLock){
+            lockAll();
+            try { super.setRetention(maxExited,maxAgeTicks); }
+            finally { unlockAll(); }
+        }
+    }
+
+    @Override
+    void reconfigure(Runnable change){
+        synchronized (addLock){
+            lockAll();
+            try { super.reconfigure(change); epoch++; }
+            finally { unlockAll(); }
+        }
+    }
+
+    @Override
+    public void snapshot(WritableByteChannel out) throws IOException {
+        synchronized (addLock){
+            lockAll();
+            try { super.snapshot(out); }
+            finally { unlockAll(); }
+        }
+    }
+
+    @Override
+    public long restore(ReadableByteChannel in) throws IOException {
+        synchronized (addLock){
+            lockAll();
+            try { return super.restore(in); }
+            finally { unlockAll(); }
+        }
+    }
+
+    /**
+     * Locks the stripes of every listed train's current and next section (every neighbour
+     * while rerouting is on), re-checks that
+     * no train moved while the locks were being taken (retrying if one did), then ticks.
+     * Next hops are read before locking, so a closure applied in between also forces a
+     * retry: it changes the epoch, and cannot apply while any stripe is held.
+     * With metrics attached, waiting for the locks counts towards the validate phase.
+     */
+    private int lockedTick(int[] hs, int len, Local l, long t0){
+        if (l.seen.length<len){
+            l.seen=new int[Math.max(len, l.seen.length*2)];
+            l.locks=new int[2*l.seen.length];
+        }
+        int[] seen=l.seen, locks=l.locks;
+        while (true){
+            int e=epoch, m=0;
+            for (int q=0;q<len;q++){
+                int t=hs[q], cur=(int)INTS.getAcquire(tCur, t);
+                if (cur<0) throw new IllegalArgumentException("train not present: "+tName[t]);
+                seen[q]=cur;
+                locks[m++]=stripe(cur);
+                if (cur==tDest[t]) continue;
+                if (patience>0){                // a detour may take any neighbour
+                    int deg=topo.degree(cur);
+                    if (m+deg+len>locks.length) locks=l.locks=Arrays.copyOf(locks, 2*(m+deg+len));
+                    for (int i=0;i<deg;i++) locks[m++]=stripe(topo.neighbour(cur,i));
+                } else {
+                    int nx=routing.next(cur,tDest[t]);
+                    if (nx>=0) locks[m++]=stripe(nx);
+                }
+            }
+            Arrays.sort(locks,0,m);
+            int u=0;
+            for (int i=0;i<m;i++) if (i==0 || locks[i]!=locks[u-1]) locks[u++]=locks[i];
+
+            for (int i=0;i<u;i++) stripes[locks[i]].lock();
+            try {
+                boolean stable=epoch==e;
+                for (int q=0;q<len && stable;q++) stable = tCur[hs[q]]==seen[q];
+                if (stable) return tick(hs,len,l.ws,null,t0);
+            } finally {
+                for (int i=u-1;i>=0;i--) stripes[locks[i]].unlock();
+            }
+        }
+    }
+}
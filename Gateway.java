@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process front door that lets many dispatcher clients share one engine, coalescing
+ * their requests into one {@code moveTrains} call per tick window.
+ *
+ * Clients call {@link #move} (or {@link #addTrain}) from any thread; on JDK 21 and later,
+ * a virtual thread per client is the intended use, since callers mostly wait. A single
+ * ticker thread owns the engine. It waits for a request, keeps collecting until
+ * {@code window} has passed since that request or {@code maxBatch} requests are in, then
+ * applies the window's adds in arrival order and moves every train asked for in one call.
+ * Trains that could chain therefore share a tick, and validation and sorting run once per
+ * window instead of once per request.
+ *
+ * Each caller gets back its own train's {@link Result}. A request naming a train that is
+ * not in the corridor fails on its own, with the engine's exception, and does not fail
+ * the rest of the window. Two requests for the same train in one window both get that
+ * train's single move.
+ *
+ * Everything else must also go through the gateway while it runs: it is the engine's only
+ * caller.
+ *
+ * If the ticker stops for any other reason than {@link #close} (it is interrupted, or a
+ * tick throws an {@link Error}), every request still queued fails with an
+ * {@link IllegalStateException} and later requests are refused.
+ */
+public final class Gateway implements AutoCloseable {
+
+    /** What happened to one requested train in its window. */
+    public static final class Result {
+        private final String train;
+        private final int from, to;
+        private final long tick;
+
+        Result(String train, int from, int to, long tick){ this.train=train; this.from=from; this.to=to; this.tick=tick; }
+
+        public String train(){ return train; }
+        /** Section before the window's tick. */
+        public int from(){ return from; }
+        /** Section after it; -1 if the train left the corridor. */
+        public int section(){ return to; }
+        public boolean moved(){ return to!=from; }
+        /** Number of the window, counting from 1. */
+        public long tick(){ return tick; }
+
+        @Override
+        public String toString(){ return train+(moved() ? " "+from+"→"+(to<0 ? "out" : to) : " stayed at "+from); }
+    }
+
+    private static final class Request {
+        final String train;
+        final int entry, dest;              // dest < 0 marks a move request
+        final CompletableFuture<Result> done=new CompletableFuture<>();
+        int from;
+        Request(String train, int entry, int dest){ this.train=train; this.entry=entry; this.dest=dest; }
+    }
+
+    private static final Request STOP=new Request(null,-1,-1);
+
+    private final Interlocking il;
+    private final long window;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Request> queue=new LinkedBlockingQueue<>();
+    private final Thread ticker;
+    private volatile boolean closed;
+    private Throwable stopped;          // why the ticker exited without being closed; set under the lock
+    private final LongAdder requests=new LongAdder();
+    private volatile long ticks;
+
+    /** Coalesces for one millisecond, with no cap on the batch. */
+    public Gateway(Interlocking il){ this(il, 1_000_000, Integer.MAX_VALUE); }
+
+    /**
+     * @param windowNanos how long a window stays open after its first request
+     * @param maxBatch    requests that close a window early
+     */
+    public Gateway(Interlocking il, long windowNanos, int maxBatch){
+        if (il==null) throw new IllegalArgumentException("engine must not be null");
+        if (windowNanos<0 || maxBatch<1) throw new IllegalArgumentException("window must be non-negative and maxBatch positive");
+        this.il=il; this.window=windowNanos; this.maxBatch=maxBatch;
+        ticker=new Thread(this::run, "interlocking-gateway");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /** Asks for train {@code train} to move in the next window; completes once it has run. */
+    public CompletableFuture<Result> move(String train){
+        if (train==null) throw new IllegalArgumentException("train must not be null");
+        return submit(new Request(train,-1,-1));
+    }
+
+    /** Adds a train at the start of the next window, before its moves; the result's section is the entry. */
+    public CompletableFuture<Result> addTrain(String train, int entry, int dest){
+        if (train==null || dest<0) throw new IllegalArgumentException("train and destination required");
+        return submit(new Request(train,entry,dest));
+    }
+
+    private synchronized CompletableFuture<Result> submit(Request r){
+        if (closed) throw new IllegalStateException("gateway closed");
+        if (stopped!=null) throw new IllegalStateException("gateway stopped", stopped);
+        requests.increment();
+        queue.add(r);
+        return r.done;
+    }
+
+    /** Requests accepted so far. */
+    public long requests(){ return requests.sum(); }
+
+    /** Windows run so far, so requests()/ticks() is the mean batch. */
+    public long ticks(){ return ticks; }
+
+    /**
+     * Stops taking requests, runs the ones already queued, and waits for the ticker to
+     * finish. If the caller is interrupted while waiting, it returns early with its
+     * interrupt status set; the ticker still finishes the queue.
+     */
+    @Override
+    public void close(){
+        synchronized (this){
+            if (closed) return;
+            closed=true;
+            queue.add(STOP);                // after every accepted request
+        }
+        try {
+            ticker.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ----- Ticker -----
+
+    private void run(){
+        Throwable cause=null;
+        try {
+            if (!loop()) cause=new InterruptedException("gateway ticker interrupted");
+        } catch (Error e){
+            cause=e;
+            throw e;
+        } finally {
+            if (cause!=null) fail(cause);
+        }
+    }
+
+    /** After the ticker dies: refuses new requests and fails every one still queued. */
+    private void fail(Throwable cause){
+        synchronized (this){ stopped=cause; }
+        for (Request r; (r=queue.poll())!=null; )
+            if (r!=STOP) r.done.completeExceptionally(new IllegalStateException("gateway stopped", cause));
+    }
+
+    /** Runs windows until STOP is taken (true) or the ticker is interrupted (false). */
+    private boolean loop(){
+        List<Request> batch=new ArrayList<>();
+        boolean stop=false;
+        boolean interrupted=false;
+        while (!stop){
+            batch.clear();
+            try {
+                Request first=queue.take();
+                if (first==STOP) break;
+                batch.add(first);
+                long deadline=System.nanoTime()+window;
+                while (batch.size()<maxBatch){
+                    long left=deadline-System.nanoTime();
+                    Request r=left>0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (r==null) break;
+                    if (r==STOP){ stop=true; break; }
+                    batch.add(r);
+                }
+            } catch (InterruptedException e){
+                stop=interrupted=true;      // still runs what was collected
+            }
+            if (batch.isEmpty()) continue;
+            try {
+                tick(batch);
+            } catch (RuntimeException | Error e){
+                for (Request r: batch) r.done.completeExceptionally(e);    // no-op for those already answered
+                if (e instanceof Error) throw (Error) e;
+            }
+        }
+        return !interrupted;
+    }
+
+    private void tick(List<Request> batch){
+        long n=++ticks;
+        for (Request r: batch){
+            if (r.dest<0) continue;
+            try {
+                il.addTrain(r.train, r.entry, r.dest);
+                r.done.complete(new Result(r.train, r.entry, r.entry, n));
+            } catch (RuntimeException e){
+                r.done.completeExceptionally(e);
+            }
+        }
+        List<Request> moves=new ArrayList<>(batch.size());
+        Set<String> names=new LinkedHashSet<>();
+        for (Request r: batch){
+            if (r.dest>=0) continue;
+            try {
+                r.from=il.getTrain(r.train);
+                if (r.from<0) throw new IllegalArgumentException("train not present: "+r.train);
+            } catch (RuntimeException e){
+                r.done.completeExceptionally(e);
+                continue;
+            }
+            moves.add(r);
+            names.add(r.train);
+        }
+        if (moves.isEmpty()) return;
+        try {
+            il.moveTrains(names.toArray(new String[0]));
+        } catch (RuntimeException e){
+            for (Request r: moves) r.done.completeExceptionally(e);
+            return;
+        }
+        for (Request r: moves) r.done.complete(new Result(r.train, r.from, after(r.train), n));
+    }
+
+    /** Where a train is after the tick; -1 if it left, including when retention has already forgotten it. */
+    private int after(String train){
+        try {
+            return il.getTrain(train);
+        } catch (IllegalArgumentException forgotten){
+            return -1;
+        }
+    }
+}
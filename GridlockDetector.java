@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Finds trains that block each other for good, and trains that have waited too long.
+ *
+ * Attach one with {@link InterlockingImpl#setGridlockDetector}. After every tick it
+ * updates a wait-for graph. A train that was asked to move and stayed put waits for the
+ * section it wanted, and so for whichever train occupies that section. Every train waits
+ * for at most one section, so the graph is a set of chains that may end in a ring, and a
+ * ring is a gridlock: head-on swaps, full chains when rotations are off, and so on.
+ *
+ * Only trains whose wait changed in a tick can close a new ring, so each tick walks
+ * forward from those trains alone. A walk stops at a train with no wait or at one an
+ * earlier walk of the same tick already covered. The cost is the number of intents plus
+ * the waiting chains behind the trains that changed, not the number of trains. A
+ * ring is reported once, when it closes.
+ *
+ * A conflict that never forms a ring, such as a crossing that this train always loses,
+ * shows up as starvation: a train refused {@code starveTicks} ticks in a row is reported
+ * once, on that tick.
+ *
+ * Listeners and the resolver run on the ticking thread, inside the tick, after its moves
+ * are applied. In the concurrent engine ticks are observed one at a time under this
+ * object's lock. A ring spanning other dispatchers' regions is read without their locks,
+ * so a report there is best effort.
+ */
+public final class GridlockDetector {
+
+    /** One report: a ring of trains waiting for each other in order, or one starving train. */
+    public static final class Gridlock {
+        public static final int CYCLE=0, STARVATION=1;
+
+        private final int kind;
+        private final int[] trains;
+        private final String[] names;
+
+        Gridlock(int kind, int[] trains, String[] names){ this.kind=kind; this.trains=trains; this.names=names; }
+
+        public int kind(){ return kind; }
+        /** Handles in wait order: each train waits for the section the next one holds. */
+        public int[] trains(){ return trains.clone(); }
+        public String[] names(){ return names.clone(); }
+
+        @Override
+        public String toString(){ return (kind==CYCLE ? "cycle" : "starving")+Arrays.toString(names); }
+    }
+
+    /** Called with each new gridlock; may act on the engine (it runs inside the tick). */
+    public interface Resolver {
+        void resolve(InterlockingImpl il, Gridlock g);
+    }
+
+    /**
+     * Resolver that makes every train in a ring or starving try a detour on its next tick,
+     * using the engine's rerouting settings. Does nothing while rerouting is off.
+     */
+    public static Resolver reroute(){
+        return (il,g) -> { for (int t: g.trains) il.detourNext(t); };
+    }
+
+    private final int starveTicks;
+    private final List<Consumer<Gridlock>> listeners=new CopyOnWriteArrayList<>();
+    private volatile Resolver resolver;
+
+    // Per train, indexed by handle.
+    private int[] waitSec=new int[16];      // section the train is waiting to enter, else -1
+    private int[] waited=new int[16];       // ticks in a row it has been refused
+    private int[] mark=new int[16];         // walk that last visited it
+
+    private int walk;                       // id of the current walk; marks below tickBase are stale
+    private int[] changed=new int[16], path=new int[16];
+
+    private final List<Gridlock> rings=new ArrayList<>();
+    private long cycles, starving;
+
+    /** @param starveTicks consecutive refusals that count as starvation (0 never reports it) */
+    public GridlockDetector(int starveTicks){
+        if (starveTicks<0) throw new IllegalArgumentException("starveTicks must be non-negative");
+        this.starveTicks=starveTicks;
+        Arrays.fill(waitSec,-1);
+    }
+
+    public void addListener(Consumer<Gridlock> l){ listeners.add(l); }
+    public void removeListener(Consumer<Gridlock> l){ listeners.remove(l); }
+
+    /** Hook run on every new gridlock after the listeners, e.g. {@link #reroute()}; null for none. */
+    public void setResolver(Resolver r){ resolver=r; }
+
+    public synchronized long cycles(){ return cycles; }
+    public synchronized long starving(){ return starving; }
+
+    /** Rings reported so far that still hold: every train still waits for the next. */
+    public synchronized List<Gridlock> active(InterlockingImpl il){
+        rings.removeIf(g -> !holds(il, g.trains));
+        return new ArrayList<>(rings);
+    }
+
+    /** Whether train h currently waits in a reported ring. */
+    public synchronized boolean gridlocked(InterlockingImpl il, int h){
+        for (Gridlock g: active(il)) for (int t: g.trains) if (t==h) return true;
+        return false;
+    }
+
+    private boolean holds(InterlockingImpl il, int[] ring){
+        for (int i=0;i<ring.length;i++){
+            int t=ring[i], s=t<waitSec.length ? waitSec[t] : -1;
+            if (s<0 || il.getSectionHandle(s)!=ring[(i+1)%ring.length]) return false;
+        }
+        return true;
+    }
+
+    // ----- Engine side -----
+
+    /**
+     * Takes in the tick just run: intent c was train iTrain[c] leaving iCur[c] for
+     * iNext[c] (-1 = exit), and it moved iff the train is no longer in iCur[c].
+     */
+    void observe(InterlockingImpl il, int n, int[] iTrain, int[] iCur, int[] iNext){
+        List<Gridlock> found=null;
+        synchronized (this){
+            if (waitSec.length<il.nTrains) grow(il.nTrains);
+            if (changed.length<n) changed=new int[Math.max(n, changed.length*2)];
+            int nc=0;
+            for (int c=0;c<n;c++){
+                int t=iTrain[c], want=il.tCur[t]==iCur[c] ? iNext[c] : -1;
+                if (want<0){ waitSec[t]=-1; waited[t]=0; continue; }
+                if (++waited[t]==starveTicks){
+                    starving++;
+                    found=add(found, new Gridlock(Gridlock.STARVATION, new int[] {t}, new String[] {il.tName[t]}));
+                }
+                if (waitSec[t]!=want){ waitSec[t]=want; changed[nc++]=t; }
+            }
+            int tickBase=walk+1;
+            for (int i=0;i<nc;i++){
+                int[] ring=ringFrom(il, changed[i], tickBase);
+                if (ring==null) continue;
+                String[] names=new String[ring.length];
+                for (int k=0;k<ring.length;k++) names[k]=il.tName[ring[k]];
+                Gridlock g=new Gridlock(Gridlock.CYCLE, ring, names);
+                rings.add(g);
+                cycles++;
+                found=add(found, g);
+            }
+        }
+        if (found==null) return;
+        Resolver r=resolver;
+        for (Gridlock g: found){
+            for (Consumer<Gridlock> l: listeners) l.accept(g);
+            if (r!=null) r.resolve(il, g);
+        }
+    }
+
+    /** Follows waits from x; returns the ring the walk closes, if it closes one. */
+    private int[] ringFrom(InterlockingImpl il, int x, int tickBase){
+        if (++walk<0){ Arrays.fill(mark,0); walk=1; tickBase=1; }
+        int len=0, cur=x;
+        while (true){
+            if (mark[cur]==walk){
+                int i=len-1;
+                while (path[i]!=cur) i--;
+                return Arrays.copyOfRange(path, i, len);
+            }
+            if (mark[cur]>=tickBase) return null;       // an earlier walk this tick got here
+            mark[cur]=walk;
+            if (len==path.length) path=Arrays.copyOf(path, len*2);
+            path[len++]=cur;
+            int s=waitSec[cur];
+            if (s<0) return null;
+            int next=il.getSectionHandle(s);
+            if (next<0 || next>=waitSec.length) return null;
+            cur=next;
+        }
+    }
+
+    private static List<Gridlock> add(List<Gridlock> l, Gridlock g){
+        if (l==null) l=new ArrayList<>(2);
+        l.add(g);
+        return l;
+    }
+
+    private void grow(int n){
+        int cap=Math.max(n, waitSec.length*2), old=waitSec.length;
+        waitSec=Arrays.copyOf(waitSec,cap); waited=Arrays.copyOf(waited,cap); mark=Arrays.copyOf(mark,cap);
+        Arrays.fill(waitSec, old, cap, -1);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Integer-handle view of an interlocking.
+ *
+ * A handle is issued once per train by {@link #addTrainHandle} and indexes dense arrays
+ * inside the engine, so the calls below never hash a train name or box a section id.
+ * Handles are small non-negative ints; -1 means "no train".
+ */
+public interface HandleInterlocking
+{
+
+    /**
+     * Adds a train to the rail corridor and returns its handle.
+     *
+     * @param   trainName A String that identifies a given train. Cannot be the same as any other train present.
+     * @param   entryTrackSection The id number of the track section that the train is entering into.
+     * @param   destinationTrackSection The id number of the track section that the train should exit from.
+     * @return  The handle of the new train.
+     * @throws  IllegalArgumentException
+     *              if the train name is already in use, or there is no valid path from the entry to the destination
+     * @throws  IllegalStateException
+     *              if the entry track is already occupied
+     */
+    public int addTrainHandle(String trainName, int entryTrackSection, int destinationTrackSection)
+        throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * The listed trains proceed to the next track section, exactly as {@link Interlocking#moveTrains(String[])}.
+     *
+     * @param   trainHandles The handles of the trains to move.
+     * @return  The number of trains that have moved.
+     * @throws  IllegalArgumentException
+     *              if a handle does not exist or its train is no longer in the rail corridor
+     */
+    public int moveTrains(int[] trainHandles)
+        throws IllegalArgumentException;
+
+    /**
+     * Returns the handle of the train currently occupying a given track section.
+     *
+     * @param   trackSection The id number of the section of track.
+     * @return  The handle of the train in that section, or -1 if the section is empty/unoccupied.
+     * @throws  IllegalArgumentException
+     *              if the track section does not exist
+     */
+    public int getSectionHandle(int trackSection)
+        throws IllegalArgumentException;
+
+    /**
+     * Returns the track section that a given train is occupying.
+     *
+     * @param   trainHandle The handle of the train.
+     * @return  The id number of section of track the train is occupying, or -1 if the train is no longer in the rail corridor
+     * @throws  IllegalArgumentException
+     *              if the handle does not exist
+     */
+    public int getTrain(int trainHandle)
+        throws IllegalArgumentException;
+
+    /**
+     * @return  The handle issued for a train name.
+     * @throws  IllegalArgumentException
+     *              if the train name does not exist
+     */
+    public int handle(String trainName)
+        throws IllegalArgumentException;
+
+    /**
+     * @return  The name a handle was issued for.
+     * @throws  IllegalArgumentException
+     *              if the handle does not exist
+     */
+    public String trainName(int trainHandle)
+        throws IllegalArgumentException;
+
+}
@@ -1,124 +1,676 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
-public class InterlockingImpl implements Interlocking {
+public class InterlockingImpl implements Interlocking, HandleInterlocking {
 
     // ----- Topology -----
 
-    private static final int MIN = 1, MAX = 11;
+    /** sections, CSR adjacency (1 step per tick), exits and crossing pairs */
+    final Topology topo;
 
-    /** undirected adjacency (1 step per tick) */
-    private final Map<Integer, Set<Integer>> G = new HashMap<>();
+    /** per-destination next-hop trees, filled on first use */
+    final Routing routing;
 
-    private void link(int a, int b) {
-        G.computeIfAbsent(a, k -> new HashSet<>()).add(b);
-        G.computeIfAbsent(b, k -> new HashSet<>()).add(a);
-    }
+    // Crossings in force: the topology's, plus and minus runtime changes. crossings holds
+    // (a,b,c,d) quadruples as in Topology; confOff/conf is their compiled conflict CSR.
+    private int[] crossings;
+    int[] confOff, conf;
+
+    // ----- State -----
+
+    /** handle of the train in each section, indexed by section id; -1 when empty */
+    final int[] occ;
+
+    /** name → handle; only the String adapter methods look trains up by name */
+    final Map<String,Integer> handles;
+
+    // Trains are dense handles 0..nTrains-1 and every column below is indexed by handle.
+    int nTrains=0;
+    String[] tName;
+    int[] tDest;
+    int[] tCur;                     // -1 when outside corridor
+    int[] tLastFrom;
+    boolean[] tReached;             // set when we move into 'dest'
+    int[] tWait;                    // ticks in a row the train was asked to move and did not
+    int[] tClass;                   // train class, indexing the topology's priority tables
+
+    boolean in(int h){ return tCur[h]>=0; }
+    private boolean atDest(int h){ return in(h) && tCur[h]==tDest[h]; }
+
+    // occ and tCur are written with release stores so a reader that does not take the
+    // engine's locks (see ConcurrentInterlocking) still sees a fully written value.
+    static final VarHandle INTS=MethodHandles.arrayElementVarHandle(int[].class);
+
+    private void setOcc(int s, int h){ INTS.setRelease(occ, s, h); }
+    private void setCur(int t, int s){ INTS.setRelease(tCur, t, s); }
+
+    // ----- Tick scratch -----
+    // Per-section tables are shared: they are indexed only by the current and target
+    // sections of the trains in a tick and are restored to neutral before the tick
+    // returns, so ticks over disjoint sections never see each other's entries.
+
+    /** swap-detection scratch: wantNext[cur] = next of the intent leaving cur, else -1 */
+    private final int[] wantNext;
+
+    /** demand heuristic scratch: intents targeting each section; all zero between ticks */
+    private final int[] demand;
+
+    /** leaving[cur] = index of the intent (then winner) leaving cur, else -1 */
+    private final int[] leaving;
+
+    private boolean rotations=false;
+
+    // Rerouting (off while patience is 0): a train refused 'patience' ticks in a row may
+    // take any neighbour at most 'maxDetour' hops off its shortest path, least jammed first.
+    int patience=0;
+    private int maxDetour=0;
+
+    /** jam[s] = intents refused entry to s since a train last entered it (rerouting only) */
+    private final int[] jam;
+
+    /** told about every tick's refusals; null (the default) when not watching for gridlock */
+    private GridlockDetector gridlock;
+
+    /** listed trains from which a tick runs its parallel phases; 0 (the default) never */
+    private int parallelMin=0;
+
+    /** lookahead planner scratch; null (the default) keeps the greedy selection */
+    private Lookahead look;
+
+    /** counters and histograms; null (the default) records nothing */
+    private TickMetrics metrics;
+
+    /** exited trains whose handles were reclaimed; null (the default) keeps every train */
+    private Tombstones tombs;
+    private int[] free=new int[16];     // reclaimed handles, reissued last-in first-out
+    private int nFree;
+
+    /** journal every committed change is appended to; null when not journaling */
+    private Journal journal;
+
+    /** receives each tick's changes while it has subscribers; null when not attached */
+    private ChangeFeed feed;
+
+    /** latest published snapshot; null while publishing is off */
+    private final AtomicReference<Snapshot> published=new AtomicReference<>();
+
+    /**
+     * Everything else a tick needs, owned by the thread running it. Intents are
+     * struct-of-arrays indexed 0..n-1; once the arrays have grown to the busiest tick
+     * seen, a tick allocates nothing.
+     */
+    static final class Workspace {
+        int[] iTrain=new int[16];       // train handle
+        int[] iCur=new int[16];         // section the train is leaving
+        int[] iNext=new int[16];        // target section, or -1 if exit
+        int[] iEdge=new int[16];        // directed edge id, or -1 if exit
+        int[] iPrio=new int[16];        // EXIT_PRIO for an exit, else the policy's priority of the move
+        int[] iHelps=new int[16];       // tie‑break: how many want my current
+        boolean[] iPref=new boolean[16];
+        boolean[] iSwap=new boolean[16];
+        byte[] iWhy=new byte[16];       // rejection reason (TickMetrics), -1 for a winner
+        int[] order=new int[16], sortTmp=new int[16], win=new int[16];
+        int done;                       // after a tick: win[0..done) are the intents that moved
+        int intents, inSwap, reserved, crossing, infeasible;   // last tick's counts, for metrics
+        long[] keys=new long[16];       // packed sort keys (batch runs)
+        int[] byRank=new int[0];        // rank → intent index (batch runs)
+        int[] byName=new int[16];       // String adapter: names translated to handles
+        int[] qNext=new int[0], qEdge=new int[0];   // parallel intents: per listed train, target (-1 exit, SKIP) and edge
+        int[] tickRank=new int[0];      // parallel sort: name rank by handle, among this tick's trains
+        String[] tickNames=new String[0];
+        int promote=-1;                 // train whose intent the lookahead puts first, else -1
+
+        /** reservedAt[s]==stamp when s is already some winner's target this tick */
+        final int[] reservedAt;
+        int stamp=0;
+
+        /** edges claimed by this tick's winners, one bit per directed edge id; all clear between ticks */
+        final long[] claimed;
+
+        final MoveResolver resolver=new MoveResolver();
+
+        Workspace(Topology topo){
+            reservedAt=new int[topo.max+1];
+            claimed=new long[(topo.edges()>>>6)+1];
+        }
+
+        void ensure(int n){
+            if (iTrain.length>=n) return;
+            int cap=Math.max(n, iTrain.length*2);
+            iTrain=new int[cap]; iCur=new int[cap]; iNext=new int[cap]; iEdge=new int[cap];
+            iPrio=new int[cap]; iHelps=new int[cap]; iPref=new boolean[cap]; iSwap=new boolean[cap];
+            iWhy=new byte[cap];
+            order=new int[cap]; sortTmp=new int[cap]; win=new int[cap]; keys=new long[cap];
+        }
+
+        int[] byName(int n){
+            if (byName.length<n) byName=new int[Math.max(n, byName.length*2)];
+            return byName;
+        }
+
+        void ensureListed(int len){
+            if (qNext.length<len){ int cap=Math.max(len, qNext.length*2); qNext=new int[cap]; qEdge=new int[cap]; }
+        }
+
+        int nextStamp(){
+            if (++stamp==0){ Arrays.fill(reservedAt,0); stamp=1; }
+            return stamp;
+        }
+
+        /**
+         * Bottom-up merge sort of intent indices into order[0..n); no comparator objects, no boxing.
+         * Ties fall back to train names, or to {@code rank} (names' sort order by handle) when given.
+         */
+        void sort(int n, String[] names, int[] rank){
+            if (rank!=null && sortPacked(n,rank,false)) return;
+            int[] a=order, tmp=sortTmp;
+            for (int i=0;i<n;i++) a[i]=i;
+            for (int width=1; width<n; width<<=1){
+                for (int lo=0; lo<n-width; lo+=width<<1){
+                    int mid=lo+width, hi=Math.min(lo+(width<<1), n);
+                    if (compare(a[mid-1],a[mid],names,rank)<=0) continue;
+                    System.arraycopy(a, lo, tmp, lo, hi-lo);
+                    int i=lo, j=mid, k=lo;
+                    while (i<mid && j<hi) a[k++] = compare(tmp[i],tmp[j],names,rank)<=0 ? tmp[i++] : tmp[j++];
+                    while (i<mid) a[k++]=tmp[i++];
+                    while (j<hi) a[k++]=tmp[j++];
+                }
+            }
+        }
+
+        /**
+         * As {@link #sort}, with the packed keys built and sorted in parallel. Without batch
+         * ranks, the tick's own train names are ranked first, which orders them exactly as
+         * the name comparison does.
+         */
+        void parallelSort(int n, String[] names, int[] rank){
+            if (rank==null) rank=tickRanks(n,names);
+            if (!sortPacked(n,rank,true)) sort(n,names,rank);
+        }
+
+        private int[] tickRanks(int n, String[] names){
+            if (tickNames.length<n) tickNames=new String[Math.max(n, tickNames.length*2)];
+            if (tickRank.length<names.length) tickRank=new int[names.length];
+            String[] sorted=tickNames;
+            int[] r=tickRank;
+            for (int i=0;i<n;i++) sorted[i]=names[iTrain[i]];
+            Arrays.parallelSort(sorted,0,n);
+            IntStream.range(0,n).parallel().forEach(i -> r[iTrain[i]]=Arrays.binarySearch(sorted,0,n,names[iTrain[i]]));
+            return r;
+        }
+
+        /** Forgets the last tick's intents, before {@link #absorb} collects several into this one. */
+        void clear(){ intents=done=inSwap=reserved=crossing=infeasible=0; }
 
-    /** directed edge used for crossing checks */
-    static final class Edge {
-        final int from, to;
-        Edge(int f, int t){ from=f; to=t; }
-        @Override public boolean equals(Object o){ if(!(o instanceof Edge))return false; Edge e=(Edge)o; return from==e.from&&to==e.to; }
-        @Override public int hashCode(){ return Objects.hash(from,to); }
+        /** Appends another workspace's last tick (intents, moves and counts) to this one's. */
+        void absorb(Workspace g){
+            int o=intents, n=g.intents;
+            if (iTrain.length<o+n){             // ensure() would drop what is already collected
+                int[] t=iTrain, c=iCur, x=iNext, v=win;
+                byte[] y=iWhy;
+                ensure(o+n);
+                System.arraycopy(t,0,iTrain,0,o); System.arraycopy(c,0,iCur,0,o);
+                System.arraycopy(x,0,iNext,0,o); System.arraycopy(y,0,iWhy,0,o);
+                System.arraycopy(v,0,win,0,done);
+            }
+            System.arraycopy(g.iTrain,0,iTrain,o,n); System.arraycopy(g.iCur,0,iCur,o,n);
+            System.arraycopy(g.iNext,0,iNext,o,n); System.arraycopy(g.iWhy,0,iWhy,o,n);
+            for (int k=0;k<g.done;k++) win[done+k]=g.win[k]+o;
+            intents+=n; done+=g.done;
+            inSwap+=g.inSwap; reserved+=g.reserved; crossing+=g.crossing; infeasible+=g.infeasible;
+        }
+
+        /** Moves the intent of train {@code promote}, if there is one, to the front of order. */
+        void promote(int n){
+            for (int r=0;r<n;r++) if (iTrain[order[r]]==promote){
+                int c=order[r];
+                System.arraycopy(order,0,order,1,r);
+                order[0]=c;
+                return;
+            }
+        }
+
+        /**
+         * Same order as {@link #compare}, but each intent becomes one long key
+         * (prio, helps, pref, name rank from high bits to low) sorted as primitives.
+         * Returns false, leaving the merge sort to it, if a field does not fit.
+         */
+        private boolean sortPacked(int n, int[] rank, boolean parallel){
+            if (byRank.length<rank.length) byRank=new int[rank.length];
+            long[] k=keys;
+            if (parallel){
+                if (IntStream.range(0,n).parallel().anyMatch(i -> iHelps[i]>0xFFFF || rank[iTrain[i]]>=1<<24)) return false;
+                IntStream.range(0,n).parallel().forEach(i -> k[i]=key(i,rank));
+                Arrays.parallelSort(k,0,n);
+                IntStream.range(0,n).parallel().forEach(i -> order[i]=byRank[(int)(k[i]&0xFFFFFF)]);
+                return true;
+            }
+            for (int i=0;i<n;i++){
+                if (iHelps[i]>0xFFFF || rank[iTrain[i]]>=1<<24) return false;
+                k[i]=key(i,rank);
+            }
+            Arrays.sort(k,0,n);
+            for (int i=0;i<n;i++) order[i]=byRank[(int)(k[i]&0xFFFFFF)];
+            return true;
+        }
+
+        /** Packs intent i's sort key and notes which intent holds its name rank. */
+        private long key(int i, int[] rank){
+            int r=rank[iTrain[i]];
+            byRank[r]=i;
+            return (long)(EXIT_PRIO-iPrio[i])<<41 | (long)(0xFFFF-iHelps[i])<<25 | (iPref[i]?0L:1L)<<24 | r;
+        }
+
+        private int compare(int a, int b, String[] names, int[] rank){
+            if (iPrio[a]!=iPrio[b]) return Integer.compare(iPrio[b],iPrio[a]);
+            if (iHelps[a]!=iHelps[b]) return Integer.compare(iHelps[b],iHelps[a]);
+            if (iPref[a]!=iPref[b]) return iPref[a]?-1:1;
+            if (rank!=null) return Integer.compare(rank[iTrain[a]],rank[iTrain[b]]);
+            return names[iTrain[a]].compareTo(names[iTrain[b]]);
+        }
     }
 
-    // set of unordered pairs of directed edges that geometrically cross
-    private final Set<Long> X = new HashSet<>();
-    private static long pack(Edge a, Edge b){
-        long x1=(((long)a.from)<<6)|a.to, x2=(((long)b.from)<<6)|b.to;
-        long lo=Math.min(x1,x2), hi=Math.max(x1,x2);
-        return (lo<<16)^hi;
+    /** workspace of the single-threaded API */
+    private final Workspace ws;
+
+    /** The stock 11-section corridor. */
+    public InterlockingImpl(){ this(Topology.corridor()); }
+
+    public InterlockingImpl(Topology topo){ this(topo, new HashMap<>(), 16); }
+
+    InterlockingImpl(Topology topo, Map<String,Integer> handles, int capacity){
+        this.topo=topo;
+        this.routing=new Routing(topo);
+        this.handles=handles;
+        crossings=topo.cross; confOff=topo.confOff; conf=topo.conf;
+        int n=topo.max+1;
+        occ=new int[n];
+        Arrays.fill(occ,-1);
+        wantNext=new int[n];
+        Arrays.fill(wantNext,-1);
+        demand=new int[n];
+        leaving=new int[n];
+        Arrays.fill(leaving,-1);
+        jam=new int[n];
+        ws=new Workspace(topo);
+
+        capacity=Math.max(capacity,1);
+        tName=new String[capacity]; tDest=new int[capacity]; tCur=new int[capacity];
+        tLastFrom=new int[capacity]; tReached=new boolean[capacity]; tWait=new int[capacity];
+        tClass=new int[capacity];
     }
-    private void x(Edge a, Edge b){ X.add(pack(a,b)); }
 
-    /** Build the corridor graph used by the tests. */
-    private void build() {
-        for (int i=MIN;i<=MAX;i++) G.putIfAbsent(i,new HashSet<>());
+    /**
+     * Let a closed ring of three or more trains, each targeting the next one's section,
+     * rotate together in one tick. Off by default: the stock policy only moves chains
+     * that end in a free section.
+     */
+    public void setAllowRotations(boolean on){ rotations=on; }
 
-        // Passenger (purple)
-        link(1,5); link(5,9); link(9,8);        // west vertical
-        link(2,6); link(6,10);                   // east vertical
-        link(6,9);                               // internal turnout
+    /**
+     * Let a train that has been refused {@code patience} ticks in a row leave its shortest
+     * path. It then picks among its neighbours that keep it within {@code maxDetour} extra
+     * hops of its destination (0 allows only equally short paths). Free sections beat
+     * occupied ones, then sections fewer trains were recently refused entry to, then
+     * shorter paths, then the usual next hop. A train never turns straight back to the
+     * section it came from.
+     *
+     * The alternatives come from a cached hop-count table per destination, so a tick does
+     * no searching. {@code patience} 0 turns rerouting off (the default). The refusal counts
+     * are not journaled or imaged: a restored engine starts them from zero.
+     */
+    public void setRerouting(int patience, int maxDetour){
+        if (patience<0 || maxDetour<0) throw new IllegalArgumentException("patience and maxDetour must be non-negative");
+        this.patience=patience; this.maxDetour=maxDetour;
+        if (patience==0) Arrays.fill(jam,0);
+    }
 
-        // Freight + workshops (yellow)
-        link(3,7); link(7,11);
-        link(7,4);                               // north split
-        link(4,5);                               // REQUIRED: lets 1→5→4 and 4→5→9
+    /**
+     * Publish an immutable {@link Snapshot} after every tick (and every added train).
+     * Each snapshot copies only the chunks the tick changed. Off by default, so a plain
+     * tick still allocates nothing. Turn it on before other threads start moving trains.
+     */
+    public void setSnapshots(boolean on){
+        published.set(on ? Snapshot.of(0, topo.min, topo.max, occ, nTrains, tCur, tName) : null);
+    }
 
-        // North crossover: serialize freight diagonal (7↔4) against passenger verticals (1↔5, 2↔6).
-        Edge e15=new Edge(1,5), e51=new Edge(5,1);
-        Edge e26=new Edge(2,6), e62=new Edge(6,2);
-        Edge e74=new Edge(7,4), e47=new Edge(4,7);
-        x(e15,e74); x(e15,e47); x(e51,e74); x(e51,e47);
-        x(e26,e74); x(e26,e47); x(e62,e74); x(e62,e47);
+    /**
+     * The state as of the latest completed tick, read with one volatile load.
+     * Tick numbers count from when snapshots were turned on.
+     * @throws IllegalStateException if snapshots are off
+     */
+    public Snapshot snapshot(){
+        Snapshot s=published.get();
+        if (s==null) throw new IllegalStateException("snapshots are off");
+        return s;
     }
 
-    // ----- State -----
+    /**
+     * Record per-phase latencies and rejection counts into {@code m} (null to stop).
+     * Set it before other threads start moving trains.
+     */
+    public void setMetrics(TickMetrics m){ metrics=m; }
+
+    public TickMetrics metrics(){ return metrics; }
 
-    private final Map<Integer,String> sectionToTrain = new HashMap<>();
-    private final Map<String,Train> trains = new HashMap<>();
+    /**
+     * Append every later {@code addTrain} and every tick's moves to {@code j} (null to
+     * stop). The journal must continue from this engine's current state: start it with
+     * the engine, or after replaying it into the engine.
+     */
+    public void setJournal(Journal j){ journal=j; }
 
-    static final class Train {
-        final String name;
-        final int dest;
-        int cur;                    // -1 when outside corridor
-        Integer lastFrom=null;
-        Deque<Integer> route=new ArrayDeque<>();
-        boolean reachedByMove=false;   // <— NEW: set when we move into 'dest'
+    /**
+     * Plan each tick {@code horizon} ticks ahead instead of selecting greedily. The tick
+     * first plays out the greedy order, then each order that puts one refused train first,
+     * for {@code horizon} ticks each with the same trains asked to move every tick. It
+     * commits the first tick of whichever moved the most trains in total (greedy wins
+     * ties). If the plans have not all been played out within {@code budgetNanos}, the
+     * tick falls back to the greedy order. Every plan runs through the normal tick, so
+     * whatever is committed obeys the same swap, crossing and chaining rules.
+     *
+     * {@code horizon} 0 turns it off (the default). Single-threaded engine only: the plans
+     * are played out on the live columns and rolled back.
+     */
+    public void setLookahead(int horizon, long budgetNanos){
+        if (horizon<0 || budgetNanos<0) throw new IllegalArgumentException("horizon and budget must be non-negative");
+        look=horizon>0 ? new Lookahead(topo, horizon, budgetNanos) : null;
+    }
 
-        Train(String n,int entry,int d){ name=n; cur=entry; dest=d; }
-        boolean in(){ return cur>=MIN; }
-        boolean atDest(){ return in() && cur==dest; }
+    /**
+     * Run the data-parallel phases of every tick with at least {@code minTrains} listed
+     * trains on the common pool: name lookup, routes, swap and demand counting, and the
+     * sort on packed keys. Selection, feasibility and commit stay sequential and in the
+     * same order, so results match the sequential tick exactly. 0 (the default) keeps every
+     * tick sequential; parallel phases only pay off in the tens of thousands of trains.
+     */
+    public void setParallelTicks(int minTrains){
+        if (minTrains<0) throw new IllegalArgumentException("minTrains must be non-negative");
+        parallelMin=minTrains;
     }
 
-    static final class Intent {
-        final Train t;
-        final int next;             // target section, or -1 if exit
-        final boolean isExit;
-        int helps=0;                // tie‑break: how many want my current
-        Intent(Train t,int nx,boolean ex){ this.t=t; this.next=nx; this.isExit=ex; }
-        Edge edge(){ return isExit?null:new Edge(t.cur,next); }
+    /**
+     * Watch every tick for rings of trains that block each other and for starving trains
+     * (null to stop). Set it before other threads start moving trains.
+     */
+    public void setGridlockDetector(GridlockDetector d){ gridlock=d; }
+
+    /** Ticks whose lookahead ran out of budget and used the greedy order. */
+    public long lookaheadFallbacks(){ return look!=null ? look.fallbacks : 0; }
+
+    /**
+     * Publish each tick's enter, vacate, exit and blocked events to {@code f} (null to
+     * stop). Set it before other threads start moving trains.
+     */
+    public void setChangeFeed(ChangeFeed f){ feed=f; }
+
+    /**
+     * Bound the memory held for exited trains. From now on a train that exits gives up
+     * its handle for reuse and leaves only a tombstone. {@code getTrain(name)} keeps
+     * answering -1 and its name stays taken while the tombstone is among the last
+     * {@code maxExited} exits and younger than {@code maxAgeTicks} ticks. After that the
+     * name is unknown again. Trains that have already exited are compacted straight away.
+     *
+     * A reclaimed handle is issued again to a later train, so a caller must stop using a
+     * handle once it has seen that train exit.
+     */
+    public void setRetention(int maxExited, long maxAgeTicks){
+        tombs=new Tombstones(maxExited, maxAgeTicks);
+        for (int h=0;h<nTrains;h++) if (!in(h) && Integer.valueOf(h).equals(handles.get(tName[h]))) reclaim(h);
     }
 
-    public InterlockingImpl(){ build(); }
+    /** Exited trains currently answered from tombstones; 0 when retention is off. */
+    public int tombstones(){ return tombs!=null ? tombs.size() : 0; }
+
+    /** Build the next-hop tree for every exit now instead of on first use. */
+    public void precomputeRoutes(){
+        for (int s=topo.min;s<=topo.max;s++) if (topo.isExit(s)) routing.tree(s);
+    }
 
     // ----- API -----
 
-    private static void checkSection(int s){
-        if (s<MIN || s>MAX) throw new IllegalArgumentException("track section must be 1..11");
+    void checkSection(int s){
+        if (!topo.contains(s))
+            throw new IllegalArgumentException("track section must be "+topo.min+".."+topo.max);
     }
 
     @Override
     public void addTrain(String name, int entry, int dest)
             throws IllegalArgumentException, IllegalStateException {
+        addTrainHandle(name,entry,dest);
+    }
+
+    @Override
+    public int addTrainHandle(String name, int entry, int dest)
+            throws IllegalArgumentException, IllegalStateException {
+        return addTrainHandle(name,entry,dest,0);
+    }
+
+    /** Adds a train of the named class (see {@link Topology#trainClass}). */
+    public void addTrain(String name, int entry, int dest, String trainClass)
+            throws IllegalArgumentException, IllegalStateException {
+        addTrainHandle(name,entry,dest,topo.trainClass(trainClass));
+    }
+
+    /**
+     * As {@link #addTrainHandle(String,int,int)}, for a train of class {@code trainClass}
+     * (see {@link Topology#trainClass}), whose moves are ranked by that class's priorities.
+     */
+    public int addTrainHandle(String name, int entry, int dest, int trainClass)
+            throws IllegalArgumentException, IllegalStateException {
 
         if (name==null || name.isEmpty()) throw new IllegalArgumentException("trainName must be non-empty");
         checkSection(entry); checkSection(dest);
+        if (trainClass<0 || trainClass>=topo.classes()) throw new IllegalArgumentException("no such train class: "+trainClass);
 
-        if (trains.containsKey(name)) throw new IllegalArgumentException("duplicate train: "+name);
-        if (sectionToTrain.containsKey(entry)) throw new IllegalStateException("entry occupied: "+entry);
+        if (handles.containsKey(name) || (tombs!=null && tombs.contains(name)))
+            throw new IllegalArgumentException("duplicate train: "+name);
+        if (occ[entry]>=0) throw new IllegalStateException("entry occupied: "+entry);
+        if (!routing.open(entry)) throw new IllegalStateException("entry closed: "+entry);
 
-        List<Integer> path = bfs(entry,dest);
-        if (entry!=dest && path.isEmpty())
+        if (!routing.reachable(entry,dest))
             throw new IllegalArgumentException("no path from "+entry+" to "+dest);
 
-        Train t=new Train(name,entry,dest);
-        t.route.addAll(path);
-        trains.put(name,t);
-        sectionToTrain.put(entry,name);
+        int h=newHandle();
+        tName[h]=name; tDest[h]=dest; tLastFrom[h]=-1; tReached[h]=false; tWait[h]=0; tClass[h]=trainClass;
+        setCur(h,entry);
+        handles.put(name,h);
+        setOcc(entry,h);
+        if (journal!=null) journal.add(h,name,entry,dest,trainClass);
+
+        Snapshot prev, next;
+        while ((prev=published.get())!=null){
+            next=prev.next(prev.tick(), Math.max(prev.trains(),h+1));
+            next.putSection(entry,h);
+            next.putTrain(h,entry);
+            next.putName(h,name);
+            if (published.compareAndSet(prev, next.freeze())) break;
+        }
+        return h;
+    }
+
+    /** A reclaimed handle if there is one, else the next fresh one (growing the columns). */
+    private int newHandle(){
+        if (tombs!=null) synchronized (tombs){ if (nFree>0) return free[--nFree]; }
+        int h=nTrains;
+        if (h==tName.length) growTrains();
+        nTrains=h+1;
+        return h;
+    }
+
+    /** Turns exited train t into a tombstone and frees its handle. */
+    private void reclaim(int t){
+        tombs.add(tName[t]);                // before the remove, so the name is never free in between
+        handles.remove(tName[t]);
+        synchronized (tombs){
+            if (nFree==free.length) free=Arrays.copyOf(free, nFree*2);
+            free[nFree++]=t;
+        }
+    }
+
+    /** Takes h off the free list if it is there (replay reissues a specific handle). */
+    private void unfree(int h){
+        if (tombs==null) return;
+        synchronized (tombs){
+            for (int i=nFree-1;i>=0;i--) if (free[i]==h){ free[i]=free[--nFree]; return; }
+        }
+    }
+
+    void growTrains(){
+        int cap=tName.length*2;
+        tName=Arrays.copyOf(tName,cap); tDest=Arrays.copyOf(tDest,cap); tCur=Arrays.copyOf(tCur,cap);
+        tLastFrom=Arrays.copyOf(tLastFrom,cap); tReached=Arrays.copyOf(tReached,cap);
+        tWait=Arrays.copyOf(tWait,cap); tClass=Arrays.copyOf(tClass,cap);
     }
 
     @Override
     public String getSection(int sectionId) throws IllegalArgumentException {
+        int h=getSectionHandle(sectionId);
+        return h<0 ? null : tName[h];
+    }
+
+    @Override
+    public int getSectionHandle(int sectionId) throws IllegalArgumentException {
         checkSection(sectionId);
-        return sectionToTrain.get(sectionId);
+        return occ[sectionId];
     }
 
     @Override
     public int getTrain(String name) throws IllegalArgumentException {
-        Train t=trains.get(name);
-        if (t==null) throw new IllegalArgumentException("no such train: "+name);
-        return t.cur;
+        Integer h=name!=null ? handles.get(name) : null;
+        if (h!=null) return getTrain(h.intValue());
+        if (name!=null && tombs!=null && tombs.contains(name)) return -1;
+        throw new IllegalArgumentException("no such train: "+name);
+    }
+
+    @Override
+    public int getTrain(int h) throws IllegalArgumentException {
+        checkHandle(h);
+        return tCur[h];
+    }
+
+    @Override
+    public int handle(String name) throws IllegalArgumentException {
+        Integer h=handles.get(name);
+        if (h==null) throw new IllegalArgumentException("no such train: "+name);
+        return h;
+    }
+
+    @Override
+    public String trainName(int h) throws IllegalArgumentException {
+        checkHandle(h);
+        return tName[h];
+    }
+
+    void checkHandle(int h){
+        if (h<0 || h>=nTrains) throw new IllegalArgumentException("no such train handle: "+h);
+    }
+
+    // ----- Live topology changes -----
+    // Closures and crossing changes apply from the next tick. They are operating state:
+    // journals and state images do not record them (a journal records the moves they led to).
+
+    /**
+     * Closes section s for maintenance: no train may enter it or be added there, though a
+     * train inside may still leave. Cached routes that ran through s are repaired in place
+     * (see {@link Routing}); trains left without a route wait.
+     */
+    public void closeSection(int s){
+        checkSection(s);
+        reconfigure(() -> routing.closeSection(s));
+    }
+
+    public void openSection(int s){
+        checkSection(s);
+        reconfigure(() -> routing.openSection(s));
+    }
+
+    public boolean isClosed(int s){
+        checkSection(s);
+        return !routing.open(s);
+    }
+
+    /** Closes the link a-b in both directions. */
+    public void closeLink(int a, int b){
+        int e=link(a,b), r=topo.edge(b,a);
+        reconfigure(() -> routing.closeLink(a,b,e,r));
+    }
+
+    public void openLink(int a, int b){
+        int e=link(a,b), r=topo.edge(b,a);
+        reconfigure(() -> routing.openLink(a,b,e,r));
+    }
+
+    public boolean isClosed(int a, int b){ return !routing.linkOpen(link(a,b)); }
+
+    /** Makes link a-b cross link c-d (all four directions conflict), as a {@code cross} line would. */
+    public void addCrossing(int a, int b, int c, int d){
+        link(a,b); link(c,d);
+        reconfigure(() -> {
+            if (crossing(a,b,c,d)>=0) return;
+            int[] x=Arrays.copyOf(crossings, crossings.length+4);
+            x[crossings.length]=a; x[crossings.length+1]=b; x[crossings.length+2]=c; x[crossings.length+3]=d;
+            setCrossings(x);
+        });
+    }
+
+    /** Undoes a crossing of links a-b and c-d, however it was declared; false if there was none. */
+    public boolean removeCrossing(int a, int b, int c, int d){
+        link(a,b); link(c,d);
+        boolean[] found={false};
+        reconfigure(() -> {
+            for (int i; (i=crossing(a,b,c,d))>=0; ){
+                int[] x=crossings, y=new int[x.length-4];
+                System.arraycopy(x,0,y,0,i);
+                System.arraycopy(x,i+4,y,i,x.length-i-4);
+                setCrossings(y);
+                found[0]=true;
+            }
+        });
+        return found[0];
+    }
+
+    /** Whether directed edges ea and eb cross under the crossings now in force. */
+    public boolean crosses(int ea, int eb){
+        return ea>=0 && eb>=0 && Arrays.binarySearch(conf, confOff[ea], confOff[ea+1], eb)>=0;
+    }
+
+    /** Runs a topology change; the concurrent engines first stop every tick. */
+    void reconfigure(Runnable change){ change.run(); }
+
+    private int link(int a, int b){
+        checkSection(a); checkSection(b);
+        int e=topo.edge(a,b);
+        if (e<0) throw new IllegalArgumentException("no link "+a+"-"+b);
+        return e;
+    }
+
+    /** Offset in crossings of a quadruple naming links a-b and c-d in any direction or order, else -1. */
+    private int crossing(int a, int b, int c, int d){
+        int[] x=crossings;
+        for (int i=0;i<x.length;i+=4){
+            boolean ab1=same(x[i],x[i+1],a,b), cd2=same(x[i+2],x[i+3],c,d);
+            boolean cd1=same(x[i],x[i+1],c,d), ab2=same(x[i+2],x[i+3],a,b);
+            if ((ab1 && cd2) || (cd1 && ab2)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean same(int p, int q, int a, int b){ return (p==a && q==b) || (p==b && q==a); }
+
+    private void setCrossings(int[] x){
+        int[][] c=topo.conflicts(x);
+        crossings=x; confOff=c[0]; conf=c[1];
     }
 
     // ----- Movement engine -----
@@ -126,193 +678,663 @@ public class InterlockingImpl implements Interlocking {
     @Override
     public int moveTrains(String[] names) throws IllegalArgumentException {
         if (names==null || names.length==0) return 0;
+        long t0=metrics!=null ? System.nanoTime() : 0;
+        int[] hs=ws.byName(names.length);
+        int len=resolveNames(names,hs);
+        return tick(hs, len, ws, null, t0);
+    }
 
-        // Strict validation per interface: unknown or already-out trains are illegal.  :contentReference[oaicite:8]{index=8}
+    /**
+     * Strict validation per interface: unknown or already-out trains are illegal.  :contentReference[oaicite:8]{index=8}
+     * Writes the handles of the non-null names into hs and returns how many there were.
+     */
+    int resolveNames(String[] names, int[] hs){
+        if (parallelMin>0 && names.length>=parallelMin) return resolveParallel(names,hs);
+        int len=0;
         for (String nm : names){
             if (nm==null) continue;
-            Train t = trains.get(nm);
-            if (t==null || !t.in())
+            Integer h = handles.get(nm);
+            if (h==null || !in(h))
                 throw new IllegalArgumentException("train not present: "+nm);
+            hs[len++]=h;
+        }
+        return len;
+    }
+
+    /** resolveNames with the lookups in parallel; still reports the first bad name in list order. */
+    private int resolveParallel(String[] names, int[] hs){
+        IntStream.range(0,names.length).parallel().forEach(i -> {
+            String nm=names[i];
+            Integer h=nm==null ? null : handles.get(nm);
+            hs[i]=nm==null ? -1 : h==null || !in(h) ? SKIP : h;
+        });
+        int len=0;
+        for (int i=0;i<names.length;i++){
+            if (hs[i]==-1) continue;
+            if (hs[i]==SKIP) throw new IllegalArgumentException("train not present: "+names[i]);
+            hs[len++]=hs[i];
+        }
+        return len;
+    }
+
+    @Override
+    public int moveTrains(int[] hs) throws IllegalArgumentException {
+        if (hs==null || hs.length==0) return 0;
+        long t0=metrics!=null ? System.nanoTime() : 0;
+        checkPresent(hs,hs.length);
+        return tick(hs,hs.length,ws,null,t0);
+    }
+
+    void checkPresent(int[] hs, int len){
+        for (int q=0;q<len;q++){
+            int h=hs[q];
+            if (h<0 || h>=nTrains || !in(h))
+                throw new IllegalArgumentException("train not present: "+h);
+        }
+    }
+
+    /**
+     * One tick over hs[0..len), all of which are valid handles still in the corridor.
+     * Reads and writes only the sections those trains occupy or target.
+     */
+    int tick(int[] hs, int len, Workspace w){ return tick(hs,len,w,null,0); }
+
+    /**
+     * As above; {@code rank} orders names in batch runs (else null), and {@code t0} is
+     * when validation started, for metrics (read only when metrics are attached).
+     */
+    int tick(int[] hs, int len, Workspace w, int[] rank, long t0){
+        TickMetrics m=metrics;
+        if (look!=null) w.promote=plan(hs,len,rank);
+        if (m==null){
+            int moved=step(hs,len,w,rank,null,0);
+            after(w);
+            return moved;
+        }
+        if (t0==0) t0=System.nanoTime();
+        int moved=step(hs,len,w,rank,m,m.lap(TickMetrics.VALIDATE,t0));
+        after(w);
+        m.tick(System.nanoTime()-t0, w.intents, moved, w.inSwap, w.reserved, w.crossing, w.infeasible);
+        return moved;
+    }
+
+    /** What follows every tick's moves: refusal counts, the gridlock watch, journal and publication. */
+    void after(Workspace w){
+        if (patience>0) tally(w);
+        if (gridlock!=null) gridlock.observe(this, w.intents, w.iTrain, w.iCur, w.iNext);
+        committed(w);
+    }
+
+    /** Whether {@link #after} reads the tick's intents at all. */
+    boolean observed(){
+        return patience>0 || gridlock!=null || journal!=null || feed!=null || tombs!=null || published.get()!=null;
+    }
+
+    // ----- Lookahead -----
+
+    /** Scratch for {@link #plan}: its own workspace, and the saved state of the listed trains. */
+    static final class Lookahead {
+        final Workspace ws;
+        final int horizon;
+        final long budget;
+        int[] live=new int[16], savCur=new int[16], savLast=new int[16];
+        boolean[] savReached=new boolean[16];
+        int[] cand=new int[16];         // trains the greedy first tick refused over a target or a crossing
+        int nc;
+        long fallbacks;
+
+        Lookahead(Topology topo, int horizon, long budget){
+            ws=new Workspace(topo); this.horizon=horizon; this.budget=budget;
+        }
+
+        void ensure(int n){
+            if (live.length>=n) return;
+            int cap=Math.max(n, live.length*2);
+            live=new int[cap]; savCur=new int[cap]; savLast=new int[cap]; cand=new int[cap];
+            savReached=new boolean[cap];
+        }
+    }
+
+    /** The train the coming tick should put first, or -1 for the greedy order. */
+    private int plan(int[] hs, int len, int[] rank){
+        Lookahead p=look;
+        long deadline=System.nanoTime()+p.budget;
+        p.ensure(len);
+        for (int q=0;q<len;q++){
+            int t=hs[q];
+            p.savCur[q]=tCur[t]; p.savLast[q]=tLastFrom[t]; p.savReached[q]=tReached[t];
+        }
+        int best=-1, bestMoved=rollout(hs,len,rank,-1);
+        for (int i=0, nc=p.nc;i<nc;i++){
+            if (System.nanoTime()>deadline){ p.fallbacks++; return -1; }
+            int moved=rollout(hs,len,rank,p.cand[i]);
+            if (moved>bestMoved){ bestMoved=moved; best=p.cand[i]; }
+        }
+        return best;
+    }
+
+    /**
+     * Plays {@code horizon} ticks with {@code first} promoted in the first, counting moves,
+     * then puts the listed trains back. Only listed trains move, so clearing their final
+     * sections and re-occupying their saved ones restores occupancy exactly.
+     */
+    private int rollout(int[] hs, int len, int[] rank, int first){
+        Lookahead p=look;
+        Workspace w=p.ws;
+        int[] live=p.live;
+        int n=0, moved=0;
+        for (int q=0;q<len;q++) live[n++]=hs[q];
+        for (int k=0;k<p.horizon && n>0;k++){
+            w.promote=k==0 ? first : -1;
+            moved+=step(live,n,w,rank,null,0);
+            if (k==0 && first<0){
+                p.nc=0;
+                for (int c=0;c<w.intents;c++)
+                    if (w.iWhy[c]==TickMetrics.RESERVED || w.iWhy[c]==TickMetrics.CROSSING) p.cand[p.nc++]=w.iTrain[c];
+            }
+            int m=0;
+            for (int i=0;i<n;i++) if (in(live[i])) live[m++]=live[i];
+            n=m;
+        }
+        w.promote=-1;
+        for (int q=0;q<len;q++) if (tCur[hs[q]]>=0) setOcc(tCur[hs[q]],-1);
+        for (int q=0;q<len;q++){
+            int t=hs[q];
+            tLastFrom[t]=p.savLast[q]; tReached[t]=p.savReached[q];
+            setCur(t,p.savCur[q]);
+            setOcc(p.savCur[q],t);
+        }
+        return moved;
+    }
+
+    // ----- Rerouting -----
+
+    /** The neighbour of cur that train t should try instead of {@code best}, its usual next hop. */
+    private int detour(int t, int cur, int best){
+        int[] dist=routing.dist(tDest[t]);
+        int limit=dist[cur]-1+maxDetour, pick=best, score=score(best,dist[best]-dist[cur]);
+        int[] off=topo.off, adj=topo.adj;
+        for (int i=off[cur], end=off[cur+1]; i<end; i++){
+            int v=adj[i];
+            if (v==best || v==tLastFrom[t] || dist[v]<0 || dist[v]>limit || !routing.passable(i,v)) continue;
+            int sc=score(v,dist[v]-dist[cur]);
+            if (sc<score){ score=sc; pick=v; }
+        }
+        return pick;
+    }
+
+    /** Lower is better: free first, then least jammed, then fewest extra hops (slope is -1 on a shortest path). */
+    private int score(int v, int slope){
+        return (occ[v]>=0 ? 1<<30 : 0) + (Math.min(jam[v],0xFFFF)<<8) + slope+1;
+    }
+
+    /** Makes train t try a detour the next time it is asked to move (rerouting must be on). */
+    void detourNext(int t){ if (patience>0) tWait[t]=Math.max(tWait[t],patience); }
+
+    /**
+     * Updates the refusal counts after a tick: who stayed put, and which targets refused them.
+     * Entries clear a target's count before this tick's refusals are added, so the result
+     * does not depend on the order of the intents.
+     */
+    private void tally(Workspace w){
+        int[] iTrain=w.iTrain, iCur=w.iCur, iNext=w.iNext;
+        for (int k=0;k<w.done;k++) if (iNext[w.win[k]]>=0) jam[iNext[w.win[k]]]=0;
+        for (int c=0;c<w.intents;c++){
+            int t=iTrain[c], nx=iNext[c];
+            if (tCur[t]==iCur[c]){
+                tWait[t]++;
+                if (nx>=0 && jam[nx]<Integer.MAX_VALUE) jam[nx]++;
+            } else tWait[t]=0;
+        }
+    }
+
+    /** Hands the moves of the tick just run to the journal and the snapshot publisher. */
+    private void committed(Workspace w){
+        if (journal!=null) journal.tick(w.win, w.done, w.iTrain, w.iNext);
+        if (published.get()!=null) publish(w);
+        ChangeFeed f=feed;
+        if (f!=null && w.intents>0 && f.active()) f.publish(events(w));
+        if (tombs!=null){
+            tombs.tick();
+            for (int k=0;k<w.done;k++) if (w.iNext[w.win[k]]<0) reclaim(w.iTrain[w.win[k]]);
+        }
+    }
+
+    /**
+     * The last tick's events: the moves in commit order, then the intents that stayed put.
+     * A winner that stayed is one the feasibility pass rejected (every train that moved
+     * left its section).
+     */
+    private ChangeFeed.Batch events(Workspace w){
+        int[] win=w.win, iCur=w.iCur, iNext=w.iNext, iTrain=w.iTrain;
+        byte[] why=w.iWhy;
+        ChangeFeed.Batch b=new ChangeFeed.Batch(w.done+w.intents);
+        for (int k=0;k<w.done;k++){
+            int c=win[k], t=iTrain[c];
+            b.add(ChangeFeed.VACATE, t, iCur[c], -1, tName[t]);
+            if (iNext[c]<0) b.add(ChangeFeed.EXIT, t, -1, -1, tName[t]);
+            else b.add(ChangeFeed.ENTER, t, iNext[c], -1, tName[t]);
+        }
+        for (int c=0;c<w.intents;c++){
+            int t=iTrain[c];
+            if (why[c]>=0) b.add(ChangeFeed.BLOCKED, t, iCur[c], why[c], tName[t]);
+            else if (tCur[t]==iCur[c]) b.add(ChangeFeed.BLOCKED, t, iCur[c], TickMetrics.INFEASIBLE, tName[t]);
         }
+        return b;
+    }
+
+    /**
+     * Applies the last tick's moves to the latest snapshot and publishes the result.
+     * A tick only touches its own sections, so in the concurrent engine a lost race is
+     * retried on top of the winner's snapshot.
+     */
+    private void publish(Workspace w){
+        int[] win=w.win, iCur=w.iCur, iNext=w.iNext, iTrain=w.iTrain;
+        Snapshot prev, next;
+        do {
+            prev=published.get();
+            if (prev==null) return;
+            next=prev.next(prev.tick()+1, prev.trains());
+            for (int k=0;k<w.done;k++){
+                int c=win[k], t=iTrain[c];
+                next.putSection(iCur[c], occ[iCur[c]]);
+                if (iNext[c]>=0) next.putSection(iNext[c], occ[iNext[c]]);
+                next.putTrain(t, tCur[t]);
+            }
+        } while (!published.compareAndSet(prev, next.freeze()));
+    }
 
-        // Build intents
-        List<Intent> intents=new ArrayList<>();
-        for (String nm: names){
-            Train t=trains.get(nm);
+    /** The tick itself; with {@code m} set, each phase is timed, the first from {@code lap}. */
+    int step(int[] hs, int len, Workspace w, int[] rank, TickMetrics m, long lap){
+        w.done=0;
+        w.intents=w.inSwap=w.reserved=w.crossing=w.infeasible=0;
+        int stamp=w.nextStamp();
+        w.ensure(len);
+        int[] iTrain=w.iTrain, iCur=w.iCur, iNext=w.iNext, iEdge=w.iEdge, iPrio=w.iPrio, iHelps=w.iHelps;
+        int[] prio=topo.prio;
+        int nEdges=topo.edges();
+        boolean[] iPref=w.iPref, iSwap=w.iSwap;
+        byte[] iWhy=w.iWhy;
+
+        boolean par=parallelMin>0 && len>=parallelMin;
+
+        // Build intents (a train listed twice still moves once)
+        int n=0;
+        if (par){
+            // Routes (and detours) in parallel; duplicates are dropped in list order afterwards.
+            w.ensureListed(len);
+            int[] qNext=w.qNext, qEdge=w.qEdge;
+            IntStream.range(0,len).parallel().forEach(q -> plan(hs[q],q,qNext,qEdge));
+            for (int q=0;q<len;q++){
+                int t=hs[q], cur=tCur[t], nx=qNext[q];
+                if (nx==SKIP || leaving[cur]>=0) continue;
+                iTrain[n]=t; iCur[n]=cur; iNext[n]=nx; iEdge[n]=qEdge[q];
+                iPrio[n]=nx<0 ? EXIT_PRIO : prio[tClass[t]*nEdges+qEdge[q]];
+                iPref[n]=nx<0 || tLastFrom[t]<0 || nx!=tLastFrom[t];
+                leaving[cur]=n++;
+            }
+        }
+        else for (int q=0;q<len;q++){
+            int t=hs[q], cur=tCur[t];
+            if (leaving[cur]>=0) continue;
 
             // If this train previously REACHED its destination by moving and that
             // destination is an exit section, then when asked it exits now.
-            if (t.atDest() && t.reachedByMove && isExit(t.cur)) {
-                intents.add(new Intent(t,-1,true));
+            if (atDest(t) && tReached[t] && isExit(cur)) {
+                iTrain[n]=t; iCur[n]=cur; iNext[n]=-1; iEdge[n]=-1; iPrio[n]=EXIT_PRIO; iPref[n]=true;
+                leaving[cur]=n++;
                 continue;
             }
 
-            if (t.atDest()) continue;          // added-at-destination: do not move this tick  :contentReference[oaicite:9]{index=9}
+            if (atDest(t)) continue;           // added-at-destination: do not move this tick  :contentReference[oaicite:9]{index=9}
 
-            ensureRoute(t);
-            if (!t.route.isEmpty()) intents.add(new Intent(t, t.route.peekFirst(), false));
+            int nx=routing.next(cur,tDest[t]);
+            if (nx<0) continue;
+            if (patience>0 && tWait[t]>=patience) nx=detour(t,cur,nx);
+            iTrain[n]=t; iCur[n]=cur; iNext[n]=nx; iEdge[n]=topo.edge(cur,nx);
+            iPrio[n]=prio[tClass[t]*nEdges+iEdge[n]];
+            iPref[n]=tLastFrom[t]<0 || nx!=tLastFrom[t];
+            leaving[cur]=n++;
         }
-        if (intents.isEmpty()) return 0;
+        for (int i=0;i<n;i++) leaving[iCur[i]]=-1;
+        w.intents=n;
+        if (m!=null) lap=m.lap(TickMetrics.INTENTS,lap);
+        if (n==0) return 0;
 
-        // Block head‑on swap (A->B and B->A)
-        Set<String> inSwap=new HashSet<>();
-        for(int i=0;i<intents.size();i++){
-            for(int j=i+1;j<intents.size();j++){
-                Intent a=intents.get(i), b=intents.get(j);
-                if(!a.isExit && !b.isExit && a.t.cur==b.next && b.t.cur==a.next){
-                    inSwap.add(a.t.name); inSwap.add(b.t.name);
-                }
-            }
+        // Block head‑on swap (A->B and B->A).  Index every (cur,next) pair by cur, which is
+        // unique per intent, so the reverse pair is a single lookup: linear in intents.
+        if (par) swapsParallel(n,iCur,iNext,iSwap);
+        else {
+            for (int i=0;i<n;i++) if (iNext[i]>=0) wantNext[iCur[i]]=iNext[i];
+            for (int i=0;i<n;i++) iSwap[i] = iNext[i]>=0 && wantNext[iNext[i]]==iCur[i];
+            for (int i=0;i<n;i++) if (iNext[i]>=0) wantNext[iCur[i]]=-1;
         }
+        if (m!=null) lap=m.lap(TickMetrics.SWAP,lap);
 
         // Demand heuristic (tie‑break)
-        Map<Integer,Integer> demand=new HashMap<>();
-        for (Intent it:intents) if (!it.isExit) demand.merge(it.next,1,Integer::sum);
-        for (Intent it:intents) it.helps = demand.getOrDefault(it.t.cur,0);
+        if (par) demandParallel(n,iCur,iNext,iHelps);
+        else {
+            for (int i=0;i<n;i++) if (iNext[i]>=0) demand[iNext[i]]++;
+            for (int i=0;i<n;i++) iHelps[i]=demand[iCur[i]];
+            for (int i=0;i<n;i++) if (iNext[i]>=0) demand[iNext[i]]=0;
+        }
 
         // Order: exits first (3), passenger verticals (2), other moves (1), freight diagonal last (0).
-        intents.sort((a,b)->{
-            int ap=a.isExit?3:prio(a), bp=b.isExit?3:prio(b);
-            if (ap!=bp) return Integer.compare(bp,ap);
-            if (a.helps!=b.helps) return Integer.compare(b.helps,a.helps);
-            boolean apref=prefers(a.t), bpref=prefers(b.t);
-            if (apref!=bpref) return apref?-1:1;
-            return a.t.name.compareTo(b.t.name);
-        });
+        if (par) w.parallelSort(n,tName,rank);
+        else w.sort(n,tName,rank);
+        if (w.promote>=0) w.promote(n);
+        if (m!=null) lap=m.lap(TickMetrics.SORT,lap);
+        int[] order=w.order, win=w.win, reservedAt=w.reservedAt;
+        long[] claimed=w.claimed;
 
-        // Pick winners: no same-target and no crossing conflicts
-        List<Intent> winners=new ArrayList<>();
-        Set<Integer> reserved=new HashSet<>();
-        for (Intent cand:intents){
-            if (inSwap.contains(cand.t.name)) continue;
-            if (!cand.isExit && reserved.contains(cand.next)) continue;
+        // Pick winners: no same-target and no crossing conflicts.  A candidate only checks
+        // its own conflict list against the edges already claimed this tick.
+        int nWin=0;
+        int[] confOff=this.confOff, conf=this.conf;
+        for (int r=0;r<n;r++){
+            int c=order[r], nx=iNext[c];
+            if (iSwap[c]){ w.inSwap++; iWhy[c]=TickMetrics.IN_SWAP; continue; }
+            if (nx>=0 && reservedAt[nx]==stamp){ w.reserved++; iWhy[c]=TickMetrics.RESERVED; continue; }
 
             boolean ok=true;
-            if (!cand.isExit){
-                for (Intent w: winners){
-                    if (!w.isExit && crosses(cand,w)){ ok=false; break; }
+            if (nx>=0){
+                int e=iEdge[c];
+                for (int i=confOff[e], end=confOff[e+1]; i<end; i++){
+                    int f=conf[i];
+                    if ((claimed[f>>>6] & (1L<<f))!=0){ ok=false; break; }
                 }
             }
-            if (ok){
-                winners.add(cand);
-                if(!cand.isExit) reserved.add(cand.next);
+            if (!ok){ w.crossing++; iWhy[c]=TickMetrics.CROSSING; continue; }
+            iWhy[c]=-1;
+            win[nWin++]=c;
+            if (nx>=0){
+                reservedAt[nx]=stamp;
+                claimed[iEdge[c]>>>6] |= 1L<<iEdge[c];
             }
         }
-        if (winners.isEmpty()) return 0;
+        for (int k=0;k<nWin;k++) if (iEdge[win[k]]>=0) claimed[iEdge[win[k]]>>>6]=0;
+        if (m!=null) lap=m.lap(TickMetrics.SELECT,lap);
+        if (nWin==0) return 0;
 
         // Feasibility: allow chaining (enter a section that will be vacated this tick).
-        Map<Integer,String> occ=new HashMap<>(sectionToTrain);
-        Set<String> feasible=new HashSet<>();
-        boolean changed;
-        do{
-            changed=false;
-            for (Intent w: winners){
-                if (feasible.contains(w.t.name)) continue;
-
-                if (w.isExit){
-                    feasible.add(w.t.name);
-                    occ.remove(w.t.cur);          // this section will be free
-                    changed=true;
-                    continue;
-                }
-
-                String occName = occ.get(w.next);
-                if (occName==null || feasible.contains(occName)){
-                    feasible.add(w.t.name);
-                    occ.remove(w.t.cur);
-                    occ.put(w.next,w.t.name);
-                    changed=true;
-                }
-            }
-        } while(changed);
+        // Each winner depends on at most the winner sitting in its target; settle all chains in one pass.
+        MoveResolver resolver=w.resolver;
+        int[] dep=resolver.deps(nWin);
+        for (int k=0;k<nWin;k++) leaving[iCur[win[k]]]=k;
+        for (int k=0;k<nWin;k++){
+            int nx=iNext[win[k]];
+            if (nx<0) dep[k]=MoveResolver.FREE;
+            else if (leaving[nx]>=0) dep[k]=leaving[nx];
+            else dep[k]=occ[nx]>=0 ? MoveResolver.BLOCKED : MoveResolver.FREE;
+        }
+        for (int k=0;k<nWin;k++) leaving[iCur[win[k]]]=-1;
 
-        if (feasible.isEmpty()) return 0;
+        int feasible=resolver.resolve(nWin,rotations);
+        w.infeasible=nWin-feasible;
+        if (m!=null) lap=m.lap(TickMetrics.FEASIBLE,lap);
+        if (feasible==0) return 0;
 
         // Commit: vacate all winners first…
-        for (Intent it: winners){
-            if (!feasible.contains(it.t.name)) continue;
-            sectionToTrain.remove(it.t.cur);   // also covers exits
+        for (int k=0;k<nWin;k++){
+            if (!resolver.feasible(k)) continue;
+            setOcc(iCur[win[k]],-1);           // also covers exits
         }
 
         // …then occupy/exit.  Count exits as a move.
         int moved=0;
-        for (Intent it: winners){
-            if (!feasible.contains(it.t.name)) continue;
-
-            if (it.isExit){
-                it.t.lastFrom = it.t.cur;
-                it.t.cur = -1;                 // outside the corridor
-                it.t.route.clear();
-                it.t.reachedByMove=false;
+        for (int k=0;k<nWin;k++){
+            if (!resolver.feasible(k)) continue;
+            win[w.done++]=win[k];              // k only grows, so compacting in place is safe
+            int t=iTrain[win[k]];
+            int nx=iNext[win[k]];
+
+            if (nx<0){
+                tLastFrom[t] = tCur[t];
+                setCur(t,-1);                  // outside the corridor
+                tReached[t]=false;
                 moved++;                       // EXIT counts as a move
                 continue;
             }
 
-            int prev=it.t.cur;
-            it.t.cur=it.next;
-            it.t.lastFrom=prev;
-            sectionToTrain.put(it.t.cur, it.t.name);
-            if (!it.t.route.isEmpty() && it.t.route.peekFirst()==it.next) it.t.route.removeFirst();
+            int prev=tCur[t];
+            tLastFrom[t]=prev;
+            setOcc(nx,t);
+            setCur(t,nx);
 
             // Mark if this move reached destination; exit will happen on a later tick when asked.
-            if (it.t.cur == it.t.dest) it.t.reachedByMove = true;
+            if (nx == tDest[t]) tReached[t] = true;
 
             moved++;
         }
+        if (m!=null) m.lap(TickMetrics.COMMIT,lap);
         return moved;
     }
 
-    // ----- helpers -----
+    // ----- Parallel phases -----
+    // Each writes only slots of its own index, or section slots owned by one intent, except
+    // demand, which is counted with atomic adds. So they give the sequential phases' results.
 
-    private static boolean isExit(int s){
-        // stated exits used by the tests/brief
-        return s==2 || s==3 || s==4 || s==8 || s==9 || s==11;
+    /** Listed train q's move: qNext[q] is its target, -1 to exit or SKIP; qEdge[q] the edge. */
+    private void plan(int t, int q, int[] qNext, int[] qEdge){
+        int cur=tCur[t], nx;
+        if (atDest(t) && tReached[t] && isExit(cur)) nx=-1;
+        else if (atDest(t)) nx=SKIP;
+        else {
+            nx=routing.next(cur,tDest[t]);
+            if (nx<0) nx=SKIP;
+            else if (patience>0 && tWait[t]>=patience) nx=detour(t,cur,nx);
+        }
+        qNext[q]=nx;
+        qEdge[q]=nx>=0 ? topo.edge(cur,nx) : -1;
     }
 
-    private static int prio(Intent it){
-        Edge e=it.edge();
-        if (e==null) return 0;
-        if ((e.from==1&&e.to==5)||(e.from==5&&e.to==1)||
-            (e.from==2&&e.to==6)||(e.from==6&&e.to==2)) return 2; // passenger north verticals
-        if ((e.from==7&&e.to==4)||(e.from==4&&e.to==7)) return 0; // freight diagonal (lowest)
-        return 1;
+    private void swapsParallel(int n, int[] iCur, int[] iNext, boolean[] iSwap){
+        IntStream.range(0,n).parallel().forEach(i -> { if (iNext[i]>=0) wantNext[iCur[i]]=iNext[i]; });
+        IntStream.range(0,n).parallel().forEach(i -> iSwap[i] = iNext[i]>=0 && wantNext[iNext[i]]==iCur[i]);
+        IntStream.range(0,n).parallel().forEach(i -> { if (iNext[i]>=0) wantNext[iCur[i]]=-1; });
     }
 
-    private static boolean prefers(Train t){
-        if (t.lastFrom==null || t.route.isEmpty()) return true;
-        return !Objects.equals(t.route.peekFirst(), t.lastFrom);
+    private void demandParallel(int n, int[] iCur, int[] iNext, int[] iHelps){
+        IntStream.range(0,n).parallel().forEach(i -> { if (iNext[i]>=0) INTS.getAndAdd(demand, iNext[i], 1); });
+        IntStream.range(0,n).parallel().forEach(i -> iHelps[i]=demand[iCur[i]]);
+        IntStream.range(0,n).parallel().forEach(i -> { if (iNext[i]>=0) demand[iNext[i]]=0; });
     }
 
-    private boolean crosses(Intent a, Intent b){
-        Edge ea=a.edge(), eb=b.edge();
-        if (ea==null || eb==null) return false;
-        return X.contains(pack(ea,eb));
+    // ----- Batch simulation -----
+
+    /**
+     * Runs {@code ticks} ticks in which every train still in the corridor is asked to
+     * move, exactly as if {@code moveTrains} were called with all of them each time.
+     */
+    public Simulation simulate(int ticks){
+        if (ticks<0) throw new IllegalArgumentException("ticks must be non-negative");
+        return simulate(ticks,null);
     }
 
-    private void ensureRoute(Train t){
-        if (t.atDest() || !t.route.isEmpty()) return;
-        t.route.addAll(bfs(t.cur,t.dest));
+    /**
+     * Runs one tick per row of {@code schedule}, asking the trains listed in that row to
+     * move (a null row asks none). A listed train that has already left the corridor is
+     * skipped rather than rejected, since a schedule is written before it runs.
+     * @throws IllegalArgumentException if a row names a handle that was never issued
+     */
+    public Simulation simulate(int[][] schedule){
+        for (int[] row: schedule)
+            if (row!=null) for (int h: row) checkHandle(h);
+        return simulate(schedule.length,schedule);
     }
 
-    /** BFS from → to, returns list of next steps (excluding from, including to). */
-    private List<Integer> bfs(int from, int to){
-        if (from==to) return Collections.emptyList();
-        Queue<Integer> q=new ArrayDeque<>();
-        Map<Integer,Integer> p=new HashMap<>();
-        p.put(from,-1); q.add(from);
-        while(!q.isEmpty()){
-            int u=q.poll();
-            for(int v: G.getOrDefault(u,Collections.emptySet())){
-                if (p.containsKey(v)) continue;
-                p.put(v,u);
-                if (v==to){
-                    LinkedList<Integer> path=new LinkedList<>();
-                    for (int x=v; x!=from; x=p.get(x)) path.addFirst(x);
-                    return path;
-                }
-                q.add(v);
+    /**
+     * The batch loop. Names are ranked once so the sort runs on packed primitive keys, every
+     * destination's routing tree is built up front, and each tick only drops the trains
+     * that left instead of re-validating the whole list.
+     */
+    Simulation simulate(int ticks, int[][] schedule){
+        int[] rank=nameRanks();
+        int[] live=new int[nTrains];
+        int n=0;
+        for (int h=0;h<nTrains;h++) if (in(h)){ live[n++]=h; routing.tree(tDest[h]); }
+
+        int[] moved=new int[ticks];
+        for (int t=0;t<ticks;t++){
+            if (schedule==null){
+                if (n==0) break;
+                moved[t]=tick(live,n,ws,rank,0);
+                int k=0;
+                for (int i=0;i<n;i++) if (in(live[i])) live[k++]=live[i];
+                n=k;
+            } else {
+                int[] row=schedule[t];
+                if (row==null) continue;
+                int[] hs=ws.byName(row.length);
+                int k=0;
+                for (int h: row) if (in(h)) hs[k++]=h;
+                if (k>0) moved[t]=tick(hs,k,ws,rank,0);
             }
         }
-        return Collections.emptyList();
+        return new Simulation(moved, Arrays.copyOf(tCur,nTrains));
     }
+
+    /** rank[h] = position of train h's name in sorted name order. */
+    private int[] nameRanks(){
+        String[] sorted=Arrays.copyOf(tName,nTrains);
+        Arrays.sort(sorted);
+        int[] rank=new int[nTrains];
+        for (int h=0;h<nTrains;h++) rank[h]=Arrays.binarySearch(sorted,tName[h]);
+        return rank;
+    }
+
+    // ----- Binary state image -----
+
+    /**
+     * Writes every train (position, destination, last section, reached flag, name), the
+     * topology fingerprint and the attached journal's offset, in the {@link StateFile}
+     * format. Restoring it and replaying the journal from that offset gives back this
+     * engine exactly.
+     */
+    public void snapshot(WritableByteChannel out) throws IOException {
+        StateFile.write(this, out, journal!=null ? journal.position() : 0);
+    }
+
+    public void snapshot(OutputStream out) throws IOException {
+        WritableByteChannel ch=Channels.newChannel(out);
+        snapshot(ch);
+    }
+
+    /**
+     * Loads an image written by {@link #snapshot(WritableByteChannel)} into this engine,
+     * which must have no trains yet.
+     * @return the journal offset recorded in the image; replay the journal from there
+     * @throws IOException if the image is corrupt, truncated, for another topology, or
+     *         holds a train that could not be there (the engine is then left empty)
+     */
+    public long restore(ReadableByteChannel in) throws IOException {
+        if (nTrains!=0) throw new IllegalStateException("restore needs an empty engine");
+        return StateFile.read(this, in);
+    }
+
+    public long restore(InputStream in) throws IOException {
+        return restore(Channels.newChannel(in));
+    }
+
+    /** Restores an image, then replays {@code journal} from the offset the image recorded. */
+    public long restore(InputStream in, Path journal) throws IOException {
+        long from=restore(in);
+        return Journal.replay(journal, this, from);
+    }
+
+    /**
+     * Installs decoded columns; handles are 0..n-1 in column order. Every record is checked
+     * before anything is installed, so a bad image leaves the engine empty.
+     * @throws IOException naming the first train whose record cannot stand
+     */
+    void load(int n, String[] names, int[] cur, int[] dest, int[] last, boolean[] reached, int[] cls) throws IOException {
+        Set<String> live=new HashSet<>();
+        boolean[] held=new boolean[topo.max+1];
+        for (int h=0;h<n;h++){
+            int c=cur[h], d=dest[h], l=last[h];
+            String bad=null;
+            if (names[h]==null) bad="missing name";
+            else if (cls[h]<0 || cls[h]>=topo.classes()) bad="bad class";
+            else if (!topo.contains(d)) bad="bad destination";
+            else if (l!=-1 && !topo.contains(l)) bad="bad previous section";
+            else if (c>=0){
+                if (!topo.contains(c) || held[c]) bad="bad position";
+                else if (!live.add(names[h])) bad="duplicate train";
+                else if (l>=0 && topo.edge(l,c)<0) bad="previous section not next to position";
+                else if (!routing.reachable(c,d)) bad="destination unreachable";
+                else held[c]=true;
+            } else if (c!=-1) bad="bad position";
+            if (bad!=null) throw new IOException("state: "+bad+" for train "+(names[h]==null ? "#"+h : names[h]));
+        }
+
+        while (tName.length<n) growTrains();
+        for (int h=0;h<n;h++) if (cur[h]>=0){ handles.put(names[h],h); setOcc(cur[h],h); }
+        // An exited slot may hold a name that was reclaimed and later reused: live trains win.
+        for (int h=0;h<n;h++) if (cur[h]<0 && !handles.containsKey(names[h])) handles.put(names[h],h);
+        System.arraycopy(names,0,tName,0,n);
+        System.arraycopy(dest,0,tDest,0,n);
+        System.arraycopy(last,0,tLastFrom,0,n);
+        System.arraycopy(reached,0,tReached,0,n);
+        System.arraycopy(cls,0,tClass,0,n);
+        for (int h=0;h<n;h++) setCur(h,cur[h]);
+        nTrains=n;
+        if (tombs!=null)
+            for (int h=0;h<n;h++) if (cur[h]<0 && Integer.valueOf(h).equals(handles.get(names[h]))) reclaim(h);
+        if (published.get()!=null) setSnapshots(true);
+    }
+
+    // ----- Journal replay -----
+
+    /**
+     * Re-adds a journaled train under the handle it was issued. That is either the next
+     * fresh handle or one whose train had exited, which is reclaimed here if this engine
+     * had not already done so.
+     */
+    void replayAdd(int h, String name, int entry, int dest, int cls){
+        if (h>nTrains || (h<nTrains && in(h)) || occ[entry]>=0 || cls<0 || cls>=topo.classes())
+            throw new IllegalStateException("journal out of step with engine at train "+name);
+        if (h<nTrains){
+            unfree(h);
+            if (Integer.valueOf(h).equals(handles.get(tName[h]))) handles.remove(tName[h]);
+        } else {
+            if (h==tName.length) growTrains();
+            nTrains=h+1;
+        }
+        if (tombs!=null) tombs.forget(name);
+        tName[h]=name; tDest[h]=dest; tLastFrom[h]=-1; tReached[h]=false; tWait[h]=0; tClass[h]=cls;
+        setCur(h,entry);
+        handles.put(name,h);
+        setOcc(entry,h);
+    }
+
+    /** Re-applies a journaled tick: train hs[k] moved to to[k] (-1 = exited). */
+    void replayTick(int[] hs, int[] to, int n){
+        for (int k=0;k<n;k++){
+            int t=hs[k];
+            if (t<0 || t>=nTrains || !in(t)) throw new IllegalStateException("journal out of step with engine at handle "+t);
+            setOcc(tCur[t],-1);
+        }
+        for (int k=0;k<n;k++){
+            int t=hs[k], nx=to[k];
+            tLastFrom[t]=tCur[t];
+            setCur(t,nx);
+            if (nx<0){ tReached[t]=false; continue; }
+            setOcc(nx,t);
+            if (nx==tDest[t]) tReached[t]=true;
+        }
+        if (tombs!=null){
+            tombs.tick();
+            for (int k=0;k<n;k++) if (to[k]<0) reclaim(hs[k]);
+        }
+    }
+
+    // ----- helpers -----
+
+    private boolean isExit(int s){ return topo.isExit(s); }
+
+    /** plan(): a listed train that asks for no move this tick */
+    private static final int SKIP=-2;
+
+    /** Exits outrank every move the policy can rank. */
+    static final int EXIT_PRIO=Policy.MAX_PRIORITY+1;
 }
@@ -0,0 +1,39 @@
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Allocation_Test {
+
+    // 200 trains spaced along a 3000-section line, all moving every tick; once the scratch
+    // arrays have grown, a tick must not allocate at all.
+    @Test
+    public void steadyStateTickDoesNotAllocate() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mx instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) mx;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+        int len = 3_000, n = 200;
+        Topology.Builder b = new Topology.Builder(1, len);
+        for (int s = 1; s < len; s++) b.link(s, s + 1);
+        InterlockingImpl il = new InterlockingImpl(b.exit(len).build());
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = "T" + i;
+            il.addTrain(names[i], 1 + 2 * i, len);
+        }
+
+        for (int i = 0; i < 1_000; i++) assertEquals(n, il.moveTrains(names));
+
+        long id = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(id);
+        int moved = 0;
+        for (int i = 0; i < 1_000; i++) moved += il.moveTrains(names);
+        long bytes = bean.getThreadAllocatedBytes(id) - before;
+
+        assertEquals(n * 1_000, moved);
+        assertTrue("allocated " + bytes + " bytes over 1000 ticks", bytes < 1_024);
+    }
+}
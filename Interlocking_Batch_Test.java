@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Batch_Test {
+
+    private static InterlockingImpl corridor() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.addTrainHandle("A", 1, 9);
+        il.addTrainHandle("B", 7, 4);
+        il.addTrainHandle("C", 3, 11);
+        il.addTrainHandle("D", 10, 2);
+        return il;
+    }
+
+    @Test
+    public void allActiveMatchesRepeatedMoveTrains() {
+        InterlockingImpl batch = corridor(), loop = corridor();
+        Simulation sim = batch.simulate(12);
+        assertEquals(12, sim.ticks());
+        for (int t = 0; t < 12; t++) {
+            List<String> live = new ArrayList<>();
+            for (int h = 0; h < 4; h++) if (loop.getTrain(h) >= 0) live.add(loop.trainName(h));
+            int moved = live.isEmpty() ? 0 : loop.moveTrains(live.toArray(new String[0]));
+            assertEquals("tick " + t, moved, sim.moved(t));
+        }
+        for (int h = 0; h < 4; h++) {
+            assertEquals(loop.getTrain(h), sim.position(h));
+            assertEquals(loop.getTrain(h), batch.getTrain(h));
+        }
+    }
+
+    @Test
+    public void gridBatchMatchesLoop() {
+        InterlockingImpl batch = new InterlockingImpl(Interlocking_Concurrent_Test.grid());
+        InterlockingImpl loop = new InterlockingImpl(Interlocking_Concurrent_Test.grid());
+        int W = Interlocking_Concurrent_Test.W;
+        for (InterlockingImpl il : new InterlockingImpl[] {batch, loop})
+            for (int i = 0; i < W; i++) {
+                il.addTrainHandle("E" + i, i * W, i * W + W - 1);
+                if (i > 0 && i < W - 1) il.addTrainHandle("S" + i, i, (W - 1) * W + i);
+            }
+        Simulation sim = batch.simulate(40);
+        int[] hs = new int[loop.nTrains];
+        for (int t = 0; t < 40; t++) {
+            int n = 0;
+            for (int h = 0; h < loop.nTrains; h++) if (loop.getTrain(h) >= 0) hs[n++] = h;
+            assertEquals("tick " + t, n == 0 ? 0 : loop.moveTrains(java.util.Arrays.copyOf(hs, n)), sim.moved(t));
+        }
+        for (int h = 0; h < loop.nTrains; h++) assertEquals(loop.getTrain(h), sim.position(h));
+    }
+
+    @Test
+    public void scheduleSkipsTrainsThatHaveLeft() {
+        InterlockingImpl il = new InterlockingImpl();
+        int t = il.addTrainHandle("T", 9, 8);
+        int u = il.addTrainHandle("U", 1, 9);
+        Simulation sim = il.simulate(new int[][] {{t}, {t}, {t, u}, null, {u}});
+        assertEquals(1, sim.moved(0));     // 9 -> 8
+        assertEquals(1, sim.moved(1));     // exits from 8
+        assertEquals(1, sim.moved(2));     // T skipped, U 1 -> 5
+        assertEquals(0, sim.moved(3));
+        assertEquals(1, sim.moved(4));
+        assertEquals(-1, sim.position(t));
+        assertEquals(il.getTrain(u), sim.position(u));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scheduleRejectsUnknownHandles() {
+        corridor().simulate(new int[][] {{0}, {7}});
+    }
+}
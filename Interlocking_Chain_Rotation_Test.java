@@ -0,0 +1,71 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Chain_Rotation_Test {
+
+    // Triangle 1-2-3: A(1→2), B(2→3), C(3→1) each want the next train's section.
+    private static InterlockingImpl triangle() {
+        InterlockingImpl il = new InterlockingImpl(
+                new Topology.Builder(1, 3).link(1, 2).link(2, 3).link(3, 1).build());
+        il.addTrain("A", 1, 2);
+        il.addTrain("B", 2, 3);
+        il.addTrain("C", 3, 1);
+        return il;
+    }
+
+    @Test
+    public void ringDoesNotRotateByDefault() {
+        InterlockingImpl il = triangle();
+        assertEquals(0, il.moveTrains(new String[] {"A","B","C"}));
+        assertEquals("A", il.getSection(1));
+        assertEquals("B", il.getSection(2));
+        assertEquals("C", il.getSection(3));
+    }
+
+    @Test
+    public void ringRotatesWhenEnabled() {
+        InterlockingImpl il = triangle();
+        il.setAllowRotations(true);
+        assertEquals(3, il.moveTrains(new String[] {"A","B","C"}));
+        assertEquals("C", il.getSection(1));
+        assertEquals("A", il.getSection(2));
+        assertEquals("B", il.getSection(3));
+    }
+
+    @Test
+    public void rotationsNeverAllowHeadOnSwap() {
+        InterlockingImpl il = new InterlockingImpl(Topology.corridor());
+        il.setAllowRotations(true);
+        il.addTrain("A", 1, 9);
+        il.addTrain("B", 5, 1);
+        assertEquals(0, il.moveTrains(new String[] {"A","B"}));
+    }
+
+    // A queue filling a long line moves as a whole in a single tick, listed back to front.
+    @Test
+    public void longQueueAdvancesInOneTick() {
+        int n = 2_000;
+        Topology.Builder b = new Topology.Builder(1, n + 1);
+        for (int s = 1; s <= n; s++) b.link(s, s + 1);
+        InterlockingImpl il = new InterlockingImpl(b.exit(n + 1).build());
+        String[] names = new String[n];
+        for (int s = 1; s <= n; s++) {
+            il.addTrain("Q" + s, s, n + 1);
+            names[n - s] = "Q" + s;
+        }
+        assertEquals(n, il.moveTrains(names));
+        assertNull(il.getSection(1));
+        assertEquals("Q" + n, il.getSection(n + 1));
+    }
+
+    // The queue stops behind a train that was not asked to move.
+    @Test
+    public void queueBehindStationaryTrainStays() {
+        InterlockingImpl il = new InterlockingImpl(Topology.corridor());
+        il.addTrain("Lead", 9, 8);
+        il.addTrain("Mid", 5, 8);
+        il.addTrain("Tail", 1, 8);
+        assertEquals(0, il.moveTrains(new String[] {"Mid","Tail"}));
+        assertEquals(3, il.moveTrains(new String[] {"Lead","Mid","Tail"}));
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_ChangeFeed_Test {
+
+    /** Collects batches on the calling thread's executor, pulling one at a time. */
+    static final class Collector implements Flow.Subscriber<ChangeFeed.Batch> {
+        final List<ChangeFeed.Batch> got = new ArrayList<>();
+        Flow.Subscription sub;
+        boolean complete;
+        public void onSubscribe(Flow.Subscription s) { sub = s; s.request(1); }
+        public void onNext(ChangeFeed.Batch b) { got.add(b); sub.request(1); }
+        public void onError(Throwable t) { throw new AssertionError(t); }
+        public void onComplete() { complete = true; }
+    }
+
+    private static ChangeFeed direct() { return new ChangeFeed(Runnable::run, 16, false); }
+
+    @Test
+    public void movesAndExitsAreReported() {
+        InterlockingImpl il = new InterlockingImpl();
+        ChangeFeed feed = direct();
+        Collector c = new Collector();
+        feed.subscribe(c);
+        il.setChangeFeed(feed);
+        il.addTrain("A", 7, 11);
+
+        il.moveTrains(new String[] {"A"});
+        il.moveTrains(new String[] {"A"});
+        assertEquals(2, c.got.size());
+        ChangeFeed.Batch b = c.got.get(0);
+        assertEquals(1, b.seq());
+        assertEquals(2, b.size());
+        assertEquals(ChangeFeed.VACATE, b.kind(0));
+        assertEquals(7, b.section(0));
+        assertEquals(ChangeFeed.ENTER, b.kind(1));
+        assertEquals(11, b.section(1));
+        assertEquals("A", b.name(1));
+
+        b = c.got.get(1);
+        assertEquals(2, b.seq());
+        assertEquals(ChangeFeed.VACATE, b.kind(0));
+        assertEquals(11, b.section(0));
+        assertEquals(ChangeFeed.EXIT, b.kind(1));
+        assertEquals(-1, b.section(1));
+    }
+
+    @Test
+    public void blockedTrainsCarryTheirReason() {
+        InterlockingImpl il = new InterlockingImpl();
+        ChangeFeed feed = direct();
+        Collector c = new Collector();
+        feed.subscribe(c);
+        il.setChangeFeed(feed);
+        il.addTrain("A", 1, 9);
+        il.addTrain("B", 5, 1);
+        il.addTrain("D", 9, 11);
+
+        il.moveTrains(new String[] {"A", "B"});            // head-on swap
+        il.moveTrains(new String[] {"D"});                 // B is parked in front of D
+        assertEquals(2, c.got.size());
+        ChangeFeed.Batch swap = c.got.get(0);
+        assertEquals(2, swap.size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(ChangeFeed.BLOCKED, swap.kind(i));
+            assertEquals(TickMetrics.IN_SWAP, swap.reason(i));
+        }
+        ChangeFeed.Batch behind = c.got.get(1);
+        assertEquals(1, behind.size());
+        assertEquals(ChangeFeed.BLOCKED, behind.kind(0));
+        assertEquals("D", behind.name(0));
+        assertEquals(9, behind.section(0));
+        assertEquals(TickMetrics.INFEASIBLE, behind.reason(0));
+    }
+
+    @Test
+    public void eventsReplayToTheEngineState() {
+        InterlockingImpl il = new InterlockingImpl(Interlocking_Concurrent_Test.grid());
+        ChangeFeed feed = direct();
+        Collector c = new Collector();
+        feed.subscribe(c);
+        il.setChangeFeed(feed);
+        Interlocking_Journal_Test.drive(il, 300);
+
+        // a subscriber that only applies the changes it is told about ends up in sync
+        Map<Integer, String> occupied = new HashMap<>();
+        long seq = 0;
+        for (ChangeFeed.Batch b : c.got) {
+            assertEquals(++seq, b.seq());
+            for (int i = 0; i < b.size(); i++) {
+                if (b.kind(i) == ChangeFeed.VACATE) {
+                    String was = occupied.remove(b.section(i));     // null: entered by addTrain
+                    if (was != null) assertEquals(b.name(i), was);
+                }
+                else if (b.kind(i) == ChangeFeed.ENTER) assertNull(occupied.put(b.section(i), b.name(i)));
+                else if (b.kind(i) == ChangeFeed.BLOCKED) assertEquals(b.name(i), il.trainName(b.train(i)));
+            }
+            if (b.size() == 0) fail("empty batch");
+        }
+        // trains are added outside ticks, so only sections entered by a move are known
+        for (int s = il.topo.min(); s <= il.topo.max(); s++) {
+            String name = il.getSection(s);
+            String seen = occupied.get(s);
+            if (seen != null) assertEquals("section " + s, name, seen);
+        }
+    }
+
+    @Test
+    public void nothingIsBuiltWithoutSubscribers() {
+        InterlockingImpl il = new InterlockingImpl();
+        ChangeFeed feed = direct();
+        il.setChangeFeed(feed);
+        il.addTrain("A", 1, 9);
+        il.moveTrains(new String[] {"A"});
+        Collector late = new Collector();
+        feed.subscribe(late);
+        il.moveTrains(new String[] {"A"});
+        assertEquals(1, late.got.size());
+        assertEquals(1, late.got.get(0).seq());
+        feed.close();
+        assertTrue(late.complete);
+    }
+
+    @Test
+    public void lossyFeedDropsForASlowSubscriber() throws Exception {
+        InterlockingImpl il = new InterlockingImpl(Interlocking_Concurrent_Test.grid());
+        ExecutorService ex = Executors.newSingleThreadExecutor();
+        ChangeFeed feed = new ChangeFeed(ex, 2, true);
+        CountDownLatch subscribed = new CountDownLatch(1);
+        List<Long> seqs = Collections.synchronizedList(new ArrayList<>());
+        feed.subscribe(new Flow.Subscriber<ChangeFeed.Batch>() {
+            public void onSubscribe(Flow.Subscription s) { subscribed.countDown(); }   // never requests
+            public void onNext(ChangeFeed.Batch b) { seqs.add(b.seq()); }
+            public void onError(Throwable t) { }
+            public void onComplete() { }
+        });
+        subscribed.await(5, TimeUnit.SECONDS);
+        il.setChangeFeed(feed);
+        Interlocking_Journal_Test.drive(il, 50);
+        assertTrue(feed.dropped() > 0);
+        assertTrue(seqs.isEmpty());
+        feed.close();
+        ex.shutdown();
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Closure_Test {
+
+    //  0 - 1 - 2 - 3        two ways from 0 to 3: the top (3 hops) and the bottom (5 hops)
+    //  |           |
+    //  4 - 5 - 6 - 7 - 8    exit at 3
+    private static Topology loop() {
+        return new Topology.Builder(0, 8).link(0, 1).link(1, 2).link(2, 3)
+                .link(0, 4).link(4, 5).link(5, 6).link(6, 7).link(7, 3).link(7, 8).exit(3).build();
+    }
+
+    /** Hops from s to dest following the engine's next-hop tree, checking every step is usable; -1 if it has none. */
+    private static int walk(InterlockingImpl il, int s, int dest) {
+        int n = 0;
+        while (s != dest) {
+            int nx = il.routing.next(s, dest);
+            if (nx < 0) return -1;
+            assertTrue("closed step " + s + "->" + nx, il.routing.passable(il.topo.edge(s, nx), nx));
+            s = nx;
+            if (++n > il.topo.sections()) fail("loop in tree towards " + dest);
+        }
+        return n;
+    }
+
+    @Test
+    public void closingASectionRoutesAroundIt() {
+        InterlockingImpl il = new InterlockingImpl(loop());
+        il.addTrain("A", 0, 3);
+        il.closeSection(2);
+        assertTrue(il.isClosed(2));
+        for (int i = 0; i < 5; i++) il.moveTrains(new String[] {"A"});
+        assertEquals(3, il.getTrain("A"));
+        assertEquals(5, walk(il, 0, 3));
+        il.openSection(2);
+        assertEquals(3, walk(il, 0, 3));
+    }
+
+    @Test
+    public void aTrainInAClosedSectionMayLeaveButNoneEnters() {
+        InterlockingImpl il = new InterlockingImpl(loop());
+        il.addTrain("A", 1, 3);
+        il.addTrain("B", 0, 3);
+        il.closeSection(1);
+        il.moveTrains(new String[] {"A", "B"});
+        assertEquals(2, il.getTrain("A"));
+        assertEquals("B goes the long way", 4, il.getTrain("B"));
+        try {
+            il.addTrain("C", 1, 3);
+            fail("train added in a closed section");
+        } catch (IllegalStateException expected) { }
+    }
+
+    @Test
+    public void closingALinkAndReopeningIt() {
+        InterlockingImpl il = new InterlockingImpl(loop());
+        assertEquals(3, walk(il, 0, 3));
+        il.closeLink(2, 1);
+        assertTrue(il.isClosed(1, 2));
+        assertEquals(5, walk(il, 0, 3));
+        assertEquals("2 can still go on to 3", 1, walk(il, 2, 3));
+        assertEquals(6, walk(il, 1, 3));
+        il.closeLink(7, 3);
+        assertEquals(-1, walk(il, 0, 3));
+        il.openLink(1, 2);
+        assertEquals(3, walk(il, 0, 3));
+        assertEquals("round by the top", 7, walk(il, 7, 3));
+        il.openLink(3, 7);
+        assertEquals(1, walk(il, 7, 3));
+        assertFalse(il.isClosed(7, 3));
+    }
+
+    @Test
+    public void repairedTreesMatchFreshOnes() {
+        int w = 12;
+        Topology t = Grids.grid(w);
+        Random r = new Random(7);
+        int[] dests = {0, w - 1, w * (w - 1), w * w - 1, w / 2, w * (w / 2)};
+        InterlockingImpl il = new InterlockingImpl(t);
+        for (int d : dests) il.routing.tree(d);
+        il.routing.dist(dests[0]);
+        boolean[] closed = new boolean[t.max + 1];
+        int[][] links = new int[40][];
+        boolean[] used = new boolean[w * w];
+        for (int k = 0; k < links.length; k++) {
+            int a;
+            do a = r.nextInt(w * w); while (a % w == w - 1 || used[a]);
+            used[a] = true;
+            links[k] = new int[] {a, a + 1};
+        }
+        boolean[] cut = new boolean[links.length];
+        for (int step = 0; step < 200; step++) {
+            if (r.nextBoolean()) {
+                int s = r.nextInt(w * w);
+                if (closed[s]) il.openSection(s); else il.closeSection(s);
+                closed[s] = !closed[s];
+            } else {
+                int k = r.nextInt(links.length);
+                if (cut[k]) il.openLink(links[k][0], links[k][1]); else il.closeLink(links[k][0], links[k][1]);
+                cut[k] = !cut[k];
+            }
+            if (step % 10 != 9) continue;
+            InterlockingImpl fresh = new InterlockingImpl(t);
+            for (int s = 0; s < w * w; s++) if (closed[s]) fresh.closeSection(s);
+            for (int k = 0; k < links.length; k++) if (cut[k]) fresh.closeLink(links[k][0], links[k][1]);
+            for (int d : dests) for (int s = 0; s < w * w; s++) {
+                assertEquals("step " + step + " " + s + "->" + d, walk(fresh, s, d), walk(il, s, d));
+                assertEquals("step " + step + " next " + s + "->" + d, fresh.routing.next(s, d), il.routing.next(s, d));
+            }
+        }
+    }
+
+    @Test
+    public void crossingsCanBeAddedAndRemoved() {
+        //  0 - 1 - 2        two parallel lines, exits at 2 and 5; 0-1 crosses 3-4
+        //  3 - 4 - 5
+        Topology t = new Topology.Builder(0, 5).link(0, 1).link(1, 2).link(3, 4).link(4, 5)
+                .cross(0, 1, 3, 4).exit(2).exit(5).build();
+        InterlockingImpl il = new InterlockingImpl(t);
+        il.addTrain("A", 0, 2);
+        il.addTrain("B", 3, 5);
+        assertTrue("declared the other way round", il.removeCrossing(4, 3, 1, 0));
+        assertFalse(il.removeCrossing(0, 1, 3, 4));
+        assertFalse(il.crosses(t.edge(0, 1), t.edge(3, 4)));
+        assertEquals(2, il.moveTrains(new String[] {"A", "B"}));
+
+        il.addCrossing(1, 2, 4, 5);
+        assertTrue(il.crosses(t.edge(5, 4), t.edge(1, 2)));
+        assertEquals("only one may move", 1, il.moveTrains(new String[] {"A", "B"}));
+        assertTrue(il.getTrain("A") == 2 ^ il.getTrain("B") == 5);
+    }
+
+    @Test
+    public void shardedAndConcurrentEnginesTakeChanges() {
+        Topology t = Grids.grid(10);
+        for (InterlockingImpl il : new InterlockingImpl[] {new ShardedInterlocking(t, 3), new ConcurrentInterlocking(t, 16)}) {
+            il.addTrain("A", 12, 0);
+            il.addCrossing(11, 12, 21, 22);
+            il.closeSection(1);
+            il.closeSection(10);
+            il.closeSection(11);            // every way into 0
+            for (int i = 0; i < 4; i++) il.moveTrains(new String[] {"A"});
+            assertEquals(il.getClass().getSimpleName(), 12, il.getTrain("A"));
+            il.openSection(11);
+            il.moveTrains(new String[] {"A"});
+            il.moveTrains(new String[] {"A"});
+            assertEquals(0, il.getTrain("A"));
+        }
+    }
+
+    @Test
+    public void everyEngineMatchesThePlainOneUnderClosures() {
+        Topology t = Grids.grid(12);
+        for (long seed = 1; seed <= 60; seed++) {
+            Random r = new Random(seed);
+            InterlockingImpl plain = new InterlockingImpl(t), par = new InterlockingImpl(t);
+            par.setParallelTicks(1);
+            InterlockingImpl[] all = {plain, par, new ShardedInterlocking(t, 4), new ConcurrentInterlocking(t, 4096)};
+            List<String> names = new ArrayList<>();
+            for (int step = 0; step < 200; step++) {
+                int op = r.nextInt(10);
+                if (op < 4) {
+                    String name = "T" + step;
+                    int entry = r.nextInt(t.sections()), dest = r.nextInt(4) == 0 ? entry : r.nextInt(t.sections());
+                    try {
+                        plain.addTrain(name, entry, dest);
+                    } catch (RuntimeException occupiedClosedOrUnreachable) {
+                        continue;
+                    }
+                    for (int k = 1; k < all.length; k++) all[k].addTrain(name, entry, dest);
+                    names.add(name);
+                } else if (op < 6) {
+                    int s = r.nextInt(t.sections());
+                    boolean close = !plain.isClosed(s);
+                    for (InterlockingImpl il : all) if (close) il.closeSection(s); else il.openSection(s);
+                } else if (op < 7) {
+                    int a = r.nextInt(t.sections()), b = t.adj[t.off[a] + r.nextInt(t.off[a + 1] - t.off[a])];
+                    boolean close = !plain.isClosed(a, b);
+                    for (InterlockingImpl il : all) if (close) il.closeLink(a, b); else il.openLink(a, b);
+                } else {
+                    List<String> live = new ArrayList<>();
+                    for (String n : names) if (plain.getTrain(n) >= 0) live.add(n);
+                    String[] asked = live.toArray(new String[0]);
+                    int moved = plain.moveTrains(asked);
+                    for (int k = 1; k < all.length; k++) {
+                        String what = "seed " + seed + " step " + step + " " + all[k].getClass().getSimpleName() + (k == 1 ? " (parallel)" : "");
+                        assertEquals(what, moved, all[k].moveTrains(asked));
+                        for (int s = t.min; s <= t.max; s++) assertEquals(what + " section " + s, plain.getSection(s), all[k].getSection(s));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void closingAMissingLinkIsRejected() {
+        new InterlockingImpl(loop()).closeLink(0, 2);
+    }
+}
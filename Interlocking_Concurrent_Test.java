@@ -0,0 +1,116 @@
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Concurrent_Test {
+
+    static final int W = 16;   // grid width and height
+
+    // 16x16 stock grid, exits all round the border, with an X of crossing diagonals in every 4th cell.
+    static Topology grid() { return Grids.grid(W); }
+
+    // Every train sits in exactly the section that names it, and no section names a train elsewhere.
+    static void assertConsistent(ConcurrentInterlocking il, int trains) {
+        for (int s = 0; s < W * W; s++) {
+            int h = il.getSectionHandle(s);
+            if (h >= 0) assertEquals("section " + s, s, il.getTrain(h));
+        }
+        for (int h = 0; h < trains; h++) {
+            int cur = il.getTrain(h);
+            if (cur >= 0) assertEquals("double occupancy at " + cur, h, il.getSectionHandle(cur));
+        }
+    }
+
+    @Test
+    public void concurrentDispatchersNeverDoubleOccupy() throws Exception {
+        ConcurrentInterlocking il = new ConcurrentInterlocking(grid(), 200_000, 16);
+        int threads = 8, rounds = 40, opsPerRound = 250;
+        AtomicInteger named = new AtomicInteger(), added = new AtomicInteger();
+        AtomicReferenceArray<String> addedNames = new AtomicReferenceArray<>(200_000);
+        AtomicLong moves = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CyclicBarrier barrier = new CyclicBarrier(threads, () -> {
+            try { assertConsistent(il, il.nTrains); }
+            catch (Throwable t) { failure.compareAndSet(null, t); }
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean done = new AtomicBoolean();
+        pool.submit(() -> {                       // lock-free reader hammering the grid
+            while (!done.get()) for (int s = 0; s < W * W; s++) il.getSection(s);
+            return null;
+        });
+        Future<?>[] workers = new Future<?>[threads];
+        for (int w = 0; w < threads; w++) {
+            long seed = w;
+            workers[w] = pool.submit(() -> {
+                Random rnd = new Random(seed);
+                for (int round = 0; round < rounds; round++) {
+                    for (int op = 0; op < opsPerRound; op++) {
+                        if (rnd.nextInt(8) == 0) {
+                            // west→east along a row or north→south down a column: flows cross, never meet head-on
+                            int i = rnd.nextInt(W);
+                            boolean east = rnd.nextBoolean();
+                            int entry = east ? i * W : i, dest = east ? i * W + W - 1 : (W - 1) * W + i;
+                            String name = "T" + named.getAndIncrement();
+                            try {
+                                il.addTrain(name, entry, dest);
+                                addedNames.set(added.getAndIncrement(), name);
+                            } catch (IllegalStateException | IllegalArgumentException ignored) { }
+                        } else {
+                            int k = added.get();
+                            if (k == 0) continue;
+                            String[] batch = new String[1 + rnd.nextInt(3)];
+                            for (int i = 0; i < batch.length; i++) {
+                                String nm = addedNames.get(rnd.nextInt(k));
+                                batch[i] = nm != null && il.getTrain(nm) >= 0 ? nm : null;
+                            }
+                            try { moves.addAndGet(il.moveTrains(batch)); }
+                            catch (IllegalArgumentException ignored) { }  // exited or never added
+                        }
+                    }
+                    barrier.await();
+                }
+                return null;
+            });
+        }
+        for (Future<?> f : workers) f.get(60, TimeUnit.SECONDS);
+        done.set(true);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertConsistent(il, il.nTrains);
+        assertTrue("expected traffic to flow", moves.get() > 1_000);
+    }
+
+    @Test
+    public void singleThreadBehaviourMatchesPlainEngine() {
+        Interlocking plain = new InterlockingImpl();
+        Interlocking conc = new ConcurrentInterlocking(Topology.corridor(), 16);
+        for (Interlocking il : new Interlocking[] {plain, conc}) {
+            il.addTrain("A", 1, 9);
+            il.addTrain("B", 7, 4);
+            il.addTrain("C", 3, 11);
+        }
+        for (int tick = 0; tick < 4; tick++) {
+            String[] all = {"A", "B", "C"};
+            java.util.List<String> live = new java.util.ArrayList<>();
+            for (String n : all) if (plain.getTrain(n) >= 0) live.add(n);
+            String[] names = live.toArray(new String[0]);
+            assertEquals(plain.moveTrains(names), conc.moveTrains(names));
+            for (String n : all) assertEquals(plain.getTrain(n), conc.getTrain(n));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void capacityIsEnforced() {
+        Interlocking il = new ConcurrentInterlocking(Topology.corridor(), 2);
+        il.addTrain("A", 1, 9);
+        il.addTrain("B", 2, 10);
+        il.addTrain("C", 3, 11);
+    }
+}
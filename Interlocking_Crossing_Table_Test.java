@@ -0,0 +1,45 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Crossing_Table_Test {
+
+    // Two parallel lines, 1..150 and 151..300, with a crossover between 100-101 and 250-251.
+    private static Topology twoLines() {
+        Topology.Builder b = new Topology.Builder(1, 300);
+        for (int s = 1; s < 150; s++) b.link(s, s + 1);
+        for (int s = 151; s < 300; s++) b.link(s, s + 1);
+        return b.exit(150).exit(300).cross(100, 101, 250, 251).build();
+    }
+
+    @Test
+    public void conflictListsCoverAllFourDirections() {
+        Topology t = twoLines();
+        int[] ab = {t.edge(100, 101), t.edge(101, 100)};
+        int[] cd = {t.edge(250, 251), t.edge(251, 250)};
+        for (int e : ab) for (int f : cd) {
+            assertTrue(t.crosses(e, f));
+            assertTrue(t.crosses(f, e));
+        }
+        assertFalse(t.crosses(t.edge(99, 100), t.edge(250, 251)));
+        assertFalse(t.crosses(t.edge(100, 101), t.edge(100, 101)));
+    }
+
+    @Test
+    public void crossingBeyondSixBitIdsIsSerialized() {
+        Interlocking il = new InterlockingImpl(twoLines());
+        il.addTrain("A", 100, 150);
+        il.addTrain("B", 250, 300);
+        assertEquals(1, il.moveTrains(new String[] {"A","B"}));
+        assertTrue(il.getTrain("A") == 100 ^ il.getTrain("B") == 250);
+    }
+
+    @Test
+    public void nonCrossingMovesOnLargeIdsAreFree() {
+        Interlocking il = new InterlockingImpl(twoLines());
+        il.addTrain("A", 101, 150);
+        il.addTrain("B", 251, 300);
+        il.addTrain("C", 65, 150);
+        il.addTrain("D", 129, 150);
+        assertEquals(4, il.moveTrains(new String[] {"A","B","C","D"}));
+    }
+}
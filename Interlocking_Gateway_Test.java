@@ -0,0 +1,151 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Gateway_Test {
+
+    // 0 - 1 - 2 - 3 - 4, exit at 4.
+    private static InterlockingImpl line() {
+        return new InterlockingImpl(new Topology.Builder(0, 4).link(0, 1).link(1, 2).link(2, 3).link(3, 4).exit(4).build());
+    }
+
+    private static final long WINDOW = 200_000_000L;     // long enough that every submit below lands in one window
+
+    @Test
+    public void aChainAskedSeparatelyMovesInOneTick() throws Exception {
+        InterlockingImpl il = line();
+        il.addTrain("A", 3, 4);
+        il.addTrain("B", 2, 4);
+        il.addTrain("C", 1, 4);
+        try (Gateway g = new Gateway(il, WINDOW, 100)) {
+            // The follower asks first: alone, C would be refused by the B in front of it.
+            CompletableFuture<Gateway.Result> c = g.move("C"), b = g.move("B"), a = g.move("A");
+            assertEquals(2, c.get().section());
+            assertEquals(3, b.get().section());
+            assertEquals(4, a.get().section());
+            assertTrue(c.get().moved());
+            assertEquals(a.get().tick(), c.get().tick());
+            assertEquals(1, g.ticks());
+        }
+    }
+
+    @Test
+    public void aBadRequestFailsAlone() throws Exception {
+        InterlockingImpl il = line();
+        il.addTrain("A", 0, 4);
+        try (Gateway g = new Gateway(il, WINDOW, 100)) {
+            CompletableFuture<Gateway.Result> ghost = g.move("ghost"), a = g.move("A"), again = g.move("A");
+            try {
+                ghost.get();
+                fail("unknown train accepted");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+            assertEquals(1, a.get().section());
+            assertEquals("one move for both requests", 1, again.get().section());
+        }
+    }
+
+    @Test
+    public void addsRunBeforeTheWindowsMoves() throws Exception {
+        InterlockingImpl il = line();
+        try (Gateway g = new Gateway(il, WINDOW, 100)) {
+            CompletableFuture<Gateway.Result> add = g.addTrain("A", 0, 4), mv = g.move("A");
+            assertEquals(0, add.get().section());
+            assertEquals(1, mv.get().section());
+            assertFalse(add.get().moved());
+        }
+    }
+
+    @Test
+    public void aTrainForgottenOnExitReadsAsGone() throws Exception {
+        InterlockingImpl il = new InterlockingImpl(new Topology.Builder(0, 3).link(0, 1).link(2, 3).exit(1).exit(3).build());
+        il.setRetention(1, 1_000);                  // room for one tombstone: one of the two exits is forgotten
+        il.addTrain("A", 0, 1);
+        il.addTrain("B", 2, 3);
+        il.moveTrains(new String[] {"A", "B"});
+        try (Gateway g = new Gateway(il, WINDOW, 2)) {
+            CompletableFuture<Gateway.Result> a = g.move("A"), b = g.move("B");
+            assertEquals(-1, a.get().section());
+            assertEquals(-1, b.get().section());
+            assertTrue(a.get().moved() && b.get().moved());
+        }
+    }
+
+    @Test
+    public void manyClientsShareWindows() throws Exception {
+        int n = 200;
+        Topology.Builder b = new Topology.Builder(0, 2 * n - 1);
+        for (int i = 0; i < n; i++) b.link(2 * i, 2 * i + 1).exit(2 * i + 1);
+        InterlockingImpl il = new InterlockingImpl(b.build());
+        for (int i = 0; i < n; i++) il.addTrain("T" + i, 2 * i, 2 * i + 1);
+        CountDownLatch go = new CountDownLatch(1), done = new CountDownLatch(n);
+        int[] got = new int[n];
+        try (Gateway g = new Gateway(il, 5_000_000L, Integer.MAX_VALUE)) {
+            for (int i = 0; i < n; i++) {
+                int k = i;
+                Thread t = new Thread(() -> {
+                    try {
+                        go.await();
+                        got[k] = g.move("T" + k).get().section();
+                    } catch (Exception e) {
+                        got[k] = -2;
+                    }
+                    done.countDown();
+                });
+                t.setDaemon(true);
+                t.start();
+            }
+            go.countDown();
+            done.await();
+            assertEquals(n, g.requests());
+            assertTrue("requests were coalesced", g.ticks() < n);
+        }
+        for (int i = 0; i < n; i++) assertEquals(2 * i + 1, got[i]);
+    }
+
+    @Test
+    public void closeRunsWhatIsQueuedThenRefuses() throws Exception {
+        InterlockingImpl il = line();
+        il.addTrain("A", 0, 4);
+        Gateway g = new Gateway(il, WINDOW, 100);
+        CompletableFuture<Gateway.Result> a = g.move("A");
+        g.close();
+        assertEquals(1, a.get().section());
+        try {
+            g.move("A");
+            fail("closed gateway took a request");
+        } catch (IllegalStateException expected) { }
+    }
+
+    @Test
+    public void aDeadTickerFailsWhatIsQueuedAndRefusesMore() throws Exception {
+        InterlockingImpl il = new InterlockingImpl(new Topology.Builder(0, 1).link(0, 1).exit(1).build()) {
+            @Override
+            public int moveTrains(String[] names) { throw new AssertionError("engine broke"); }
+        };
+        il.addTrain("A", 0, 1);
+        Gateway g = new Gateway(il, WINDOW, 1);
+        CompletableFuture<Gateway.Result> first = g.move("A");
+        try {
+            first.get(10, TimeUnit.SECONDS);
+            fail("tick error not reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        // Queued before the ticker died, or refused after: either way nobody waits forever.
+        for (int i = 0; i < 3; i++) {
+            try {
+                g.move("A").get(10, TimeUnit.SECONDS);
+                fail("request served by a dead ticker");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            } catch (IllegalStateException refused) { }
+        }
+        g.close();
+    }
+}
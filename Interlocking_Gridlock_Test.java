@@ -0,0 +1,103 @@
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Gridlock_Test {
+
+    // Triangle 0-1-2 with an exit tail on each corner: 0-3, 1-4, 2-5.
+    private static Topology triangle() {
+        return new Topology.Builder(0, 5).link(0, 1).link(1, 2).link(2, 0)
+            .link(0, 3).link(1, 4).link(2, 5).exit(3).exit(4).exit(5).build();
+    }
+
+    @Test
+    public void headOnSwapIsACycle() {
+        InterlockingImpl il = new InterlockingImpl();
+        GridlockDetector d = new GridlockDetector(0);
+        List<GridlockDetector.Gridlock> seen = new ArrayList<>();
+        d.addListener(seen::add);
+        il.setGridlockDetector(d);
+        int a = il.addTrainHandle("A", 1, 9);
+        int b = il.addTrainHandle("B", 5, 1);
+
+        for (int t = 0; t < 3; t++) il.moveTrains(new int[] {a, b});
+        assertEquals("reported once, when it closed", 1, seen.size());
+        GridlockDetector.Gridlock g = seen.get(0);
+        assertEquals(GridlockDetector.Gridlock.CYCLE, g.kind());
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), new HashSet<>(Arrays.asList(g.names())));
+        assertTrue(d.gridlocked(il, a));
+        assertEquals(1, d.active(il).size());
+    }
+
+    @Test
+    public void fullRingIsACycleUnlessItMayRotate() {
+        InterlockingImpl il = new InterlockingImpl(triangle());
+        GridlockDetector d = new GridlockDetector(0);
+        il.setGridlockDetector(d);
+        il.addTrain("A", 0, 4);                 // 0→1→4
+        il.addTrain("B", 1, 5);                 // 1→2→5
+        il.addTrain("C", 2, 3);                 // 2→0→3
+        assertEquals(0, il.moveTrains(new String[] {"A", "B", "C"}));
+        assertEquals(1, d.cycles());
+        assertEquals(3, d.active(il).get(0).trains().length);
+
+        il.setAllowRotations(true);
+        assertEquals(3, il.moveTrains(new String[] {"A", "B", "C"}));
+        assertTrue("the ring broke up", d.active(il).isEmpty());
+    }
+
+    @Test
+    public void queueBehindAParkedTrainIsStarvationNotACycle() {
+        InterlockingImpl il = new InterlockingImpl();
+        GridlockDetector d = new GridlockDetector(3);
+        List<GridlockDetector.Gridlock> seen = new ArrayList<>();
+        d.addListener(seen::add);
+        il.setGridlockDetector(d);
+        il.addTrain("parked", 5, 5);
+        il.addTrain("A", 1, 9);
+        for (int t = 0; t < 6; t++) il.moveTrains(new String[] {"A"});
+        assertEquals(0, d.cycles());
+        assertEquals(1, seen.size());
+        assertEquals(GridlockDetector.Gridlock.STARVATION, seen.get(0).kind());
+        assertEquals("A", seen.get(0).names()[0]);
+    }
+
+    @Test
+    public void rerouteResolverBreaksASwap() {
+        // 0 - 1 - 2 - 3 (exits at both ends), plus a bypass 1 - 4 - 2
+        Topology t = new Topology.Builder(0, 4).link(0, 1).link(1, 2).link(2, 3).link(1, 4).link(4, 2)
+            .exit(0).exit(3).build();
+        InterlockingImpl il = new InterlockingImpl(t);
+        il.setRerouting(1_000, 1);              // patient enough that only the resolver detours
+        GridlockDetector d = new GridlockDetector(0);
+        d.setResolver(GridlockDetector.reroute());
+        il.setGridlockDetector(d);
+        il.addTrain("E", 1, 3);
+        il.addTrain("W", 2, 0);
+        assertEquals(0, il.moveTrains(new String[] {"E", "W"}));
+        assertEquals(1, d.cycles());
+        for (int i = 0; i < 6; i++) {
+            String[] live = Arrays.stream(new String[] {"E", "W"}).filter(n -> il.getTrain(n) >= 0).toArray(String[]::new);
+            if (live.length > 0) il.moveTrains(live);
+        }
+        assertEquals(-1, il.getTrain("E"));
+        assertEquals(-1, il.getTrain("W"));
+    }
+
+    @Test
+    public void longQueuesStayCheap() {
+        int len = 20_000;
+        Topology.Builder b = new Topology.Builder(0, len);
+        for (int s = 0; s < len; s++) b.link(s, s + 1);
+        InterlockingImpl il = new InterlockingImpl(b.exit(len).build());
+        GridlockDetector d = new GridlockDetector(0);
+        il.setGridlockDetector(d);
+        il.addTrain("parked", len, len - 1);    // never asked: the whole line queues behind it
+        int[] hs = new int[len - 1];
+        for (int s = 1; s < len; s++) hs[s - 1] = il.addTrainHandle("T" + s, s - 1, len);
+        for (int t = 0; t < 50; t++) il.moveTrains(hs);
+        assertEquals(0, d.cycles());
+        assertTrue(d.active(il).isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Handle_Test {
+
+    @Test
+    public void handlesAreDenseAndRoundTrip() {
+        InterlockingImpl il = new InterlockingImpl();
+        int a = il.addTrainHandle("A", 1, 9);
+        int b = il.addTrainHandle("B", 2, 10);
+        assertEquals(0, a);
+        assertEquals(1, b);
+        assertEquals(a, il.handle("A"));
+        assertEquals("B", il.trainName(b));
+        assertEquals(a, il.getSectionHandle(1));
+        assertEquals(-1, il.getSectionHandle(5));
+    }
+
+    @Test
+    public void handleApiMatchesStringApi() {
+        InterlockingImpl byHandle = new InterlockingImpl();
+        InterlockingImpl byName = new InterlockingImpl();
+        int p = byHandle.addTrainHandle("P", 7, 11);
+        int f = byHandle.addTrainHandle("F", 1, 9);
+        byName.addTrain("P", 7, 11);
+        byName.addTrain("F", 1, 9);
+
+        for (int tick = 0; tick < 2; tick++) {
+            assertEquals(byName.moveTrains(new String[] {"P","F"}), byHandle.moveTrains(new int[] {p, f}));
+            assertEquals(byName.getTrain("P"), byHandle.getTrain(p));
+            assertEquals(byName.getTrain("F"), byHandle.getTrain(f));
+        }
+        assertEquals(-1, byHandle.getTrain(p));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownHandleThrows() {
+        new InterlockingImpl().getTrain(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void movingExitedHandleThrows() {
+        InterlockingImpl il = new InterlockingImpl();
+        int t = il.addTrainHandle("T", 9, 8);
+        il.moveTrains(new int[] {t});
+        il.moveTrains(new int[] {t});   // exits from 8
+        il.moveTrains(new int[] {t});
+    }
+}
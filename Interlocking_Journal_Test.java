@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class Interlocking_Journal_Test {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    static void assertSameState(InterlockingImpl want, InterlockingImpl got) {
+        assertEquals(want.nTrains, got.nTrains);
+        for (int s = want.topo.min(); s <= want.topo.max(); s++)
+            assertEquals("section " + s, want.getSectionHandle(s), got.getSectionHandle(s));
+        for (int h = 0; h < want.nTrains; h++) {
+            assertEquals(want.trainName(h), got.trainName(h));
+            assertEquals(h, got.handle(want.trainName(h)));
+            assertEquals(want.tCur[h], got.tCur[h]);
+            assertEquals(want.tDest[h], got.tDest[h]);
+            assertEquals(want.tLastFrom[h], got.tLastFrom[h]);
+            assertEquals(want.tReached[h], got.tReached[h]);
+        }
+    }
+
+    // Rows run west→east and columns north→south, fed at the border every few ticks.
+    static void drive(InterlockingImpl il, int ticks) {
+        int W = Interlocking_Concurrent_Test.W;
+        for (int t = 0; t < ticks; t++) {
+            int i = t % W;
+            try {                                   // nTrains only grows on success, so names stay unique
+                if (t % 2 == 0) il.addTrain("E" + il.nTrains, i * W, i * W + W - 1);
+                else il.addTrain("S" + il.nTrains, i, (W - 1) * W + i);
+            } catch (IllegalStateException occupied) { }
+            int[] hs = new int[il.nTrains];
+            int n = 0;
+            for (int h = 0; h < il.nTrains; h++) if (il.getTrain(h) >= 0) hs[n++] = h;
+            if (n > 0) il.moveTrains(java.util.Arrays.copyOf(hs, n));
+        }
+    }
+
+    @Test
+    public void replayRebuildsTheEngine() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("grid.journal");
+        Topology grid = Interlocking_Concurrent_Test.grid();
+        InterlockingImpl live = new InterlockingImpl(grid);
+        try (Journal j = Journal.open(file, grid)) {
+            live.setJournal(j);
+            drive(live, 200);
+        }
+        InterlockingImpl back = new InterlockingImpl(grid);
+        Journal.replay(file, back, 0);
+        assertSameState(live, back);
+    }
+
+    @Test
+    public void reopenedJournalAppendsAfterTheLastRecord() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("corridor.journal");
+        InterlockingImpl live = new InterlockingImpl();
+        try (Journal j = Journal.open(file, live.topo)) {
+            live.setJournal(j);
+            live.addTrain("A", 1, 9);
+            live.moveTrains(new String[] {"A"});
+        }
+        try (Journal j = Journal.open(file, live.topo)) {
+            live.setJournal(j);
+            live.addTrain("B", 3, 11);
+            live.moveTrains(new String[] {"A", "B"});
+        }
+        InterlockingImpl back = new InterlockingImpl();
+        Journal.replay(file, back, 0);
+        assertSameState(live, back);
+    }
+
+    @Test
+    public void tornTailIsIgnored() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("torn.journal");
+        InterlockingImpl live = new InterlockingImpl();
+        long before;
+        try (Journal j = Journal.open(file, live.topo)) {
+            live.setJournal(j);
+            live.addTrain("A", 1, 9);
+            before = j.position();
+            live.moveTrains(new String[] {"A"});
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[] {0x55}), before + 12);   // corrupt the tick's payload
+        }
+        InterlockingImpl back = new InterlockingImpl();
+        assertEquals(before, Journal.replay(file, back, 0));
+        assertEquals(1, back.getTrain("A"));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherTopologyIsRejected() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("corridor.journal");
+        Journal.open(file, Topology.corridor()).close();
+        Journal.replay(file, new InterlockingImpl(Interlocking_Concurrent_Test.grid()), 0);
+    }
+}
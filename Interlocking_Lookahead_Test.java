@@ -0,0 +1,72 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Lookahead_Test {
+
+    // Passenger 1→9 and freight 7→4 meet at the north crossover while 5→3 waits on 4.
+    private static InterlockingImpl crossover(int horizon, long budget) {
+        InterlockingImpl il = new InterlockingImpl();
+        if (horizon > 0) il.setLookahead(horizon, budget);
+        il.addTrain("P", 1, 9);
+        il.addTrain("Q", 5, 3);
+        il.addTrain("F", 7, 4);
+        return il;
+    }
+
+    private static int exitsAfter(InterlockingImpl il, int ticks) {
+        for (int t = 0; t < ticks; t++) {
+            int[] live = new int[il.nTrains];
+            int n = 0;
+            for (int h = 0; h < il.nTrains; h++) if (il.getTrain(h) >= 0) live[n++] = h;
+            if (n > 0) il.moveTrains(Arrays.copyOf(live, n));
+        }
+        int out = 0;
+        for (int h = 0; h < il.nTrains; h++) if (il.getTrain(h) < 0) out++;
+        return out;
+    }
+
+    @Test
+    public void lookaheadClearsTheCrossoverSooner() {
+        assertEquals(1, exitsAfter(crossover(0, 0), 4));
+        assertEquals(2, exitsAfter(crossover(3, 1_000_000_000L), 4));
+    }
+
+    @Test
+    public void overBudgetFallsBackToGreedy() {
+        InterlockingImpl greedy = crossover(0, 0), starved = crossover(3, 0);
+        for (int t = 0; t < 6; t++) {
+            greedy.moveTrains(new int[] {0, 1, 2});
+            starved.moveTrains(new int[] {0, 1, 2});
+            for (int h = 0; h < 3; h++) assertEquals(greedy.getTrain(h), starved.getTrain(h));
+            if (greedy.getTrain(0) < 0 || greedy.getTrain(1) < 0 || greedy.getTrain(2) < 0) break;
+        }
+        assertTrue(starved.lookaheadFallbacks() > 0);
+    }
+
+    @Test
+    public void plansAreRolledBack() {
+        Random r = new Random(7);
+        int[] exits = {2, 3, 4, 8, 9, 11};
+        InterlockingImpl il = new InterlockingImpl();
+        il.setLookahead(4, 1_000_000_000L);
+        for (int t = 0; t < 500; t++) {
+            try { il.addTrain("T" + t, 1 + r.nextInt(11), exits[r.nextInt(exits.length)]); }
+            catch (RuntimeException busyOrUnreachable) { }
+            exitsAfter(il, 1);
+            for (int s = 1; s <= 11; s++) {
+                int h = il.getSectionHandle(s);
+                if (h >= 0) assertEquals("section " + s, s, il.getTrain(h));
+            }
+            for (int h = 0; h < il.nTrains; h++)
+                if (il.getTrain(h) >= 0) assertEquals(h, il.getSectionHandle(il.getTrain(h)));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void concurrentEngineRefuses() {
+        new ConcurrentInterlocking(Topology.corridor(), 16).setLookahead(3, 1_000_000);
+    }
+}
@@ -0,0 +1,79 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Metrics_Test {
+
+    @Test
+    public void countsTicksMovesAndRejections() {
+        InterlockingImpl il = new InterlockingImpl();
+        TickMetrics m = new TickMetrics();
+        il.setMetrics(m);
+        il.addTrain("A", 1, 9);
+        il.addTrain("B", 4, 3);     // 4→7 shares no target with A but crosses 1→5
+        assertEquals(1, il.moveTrains(new String[] {"A", "B"}));
+
+        assertEquals(1, m.ticks());
+        assertEquals(2, m.intents());
+        assertEquals(1, m.moves());
+        assertEquals(1, m.rejected(TickMetrics.CROSSING));
+        assertEquals(0, m.rejected(TickMetrics.IN_SWAP));
+        for (int p = TickMetrics.VALIDATE; p <= TickMetrics.COMMIT; p++)
+            assertEquals(TickMetrics.PHASES[p], 1, m.phase(p).count());
+        assertEquals(1, m.tickLatency().count());
+    }
+
+    @Test
+    public void swapsReservationsAndBlockedChainsAreCounted() {
+        Topology.Builder b = new Topology.Builder(1, 4);
+        b.link(1, 2).link(2, 3).link(3, 4);
+        InterlockingImpl il = new InterlockingImpl(b.exit(1).exit(4).build());
+        TickMetrics m = new TickMetrics();
+        il.setMetrics(m);
+        il.addTrain("E", 1, 4);
+        il.addTrain("W", 2, 1);      // E and W swap head-on
+        il.addTrain("X", 4, 4);      // parked at its destination
+        il.addTrain("Y", 3, 4);      // wants 4, which X never leaves
+        assertEquals(0, il.moveTrains(new String[] {"E", "W", "X", "Y"}));
+        assertEquals(2, m.rejected(TickMetrics.IN_SWAP));
+        assertEquals(1, m.rejected(TickMetrics.INFEASIBLE));
+        assertEquals(3, m.intents());
+    }
+
+    @Test
+    public void detachedEngineRecordsNothing() {
+        InterlockingImpl il = new InterlockingImpl();
+        TickMetrics m = new TickMetrics();
+        il.setMetrics(m);
+        il.addTrain("A", 1, 9);
+        il.moveTrains(new String[] {"A"});
+        il.setMetrics(null);
+        il.moveTrains(new String[] {"A"});
+        assertEquals(1, m.ticks());
+    }
+
+    @Test
+    public void histogramBucketsStayWithinAnEighth() {
+        TickMetrics.Histogram h = new TickMetrics().phase(TickMetrics.SORT);
+        for (long v = 1; v <= 1_000_000; v *= 3) h.record(v);
+        for (long v : new long[] {0, 7, 8, 15, 16, 1000, 123_456_789}) {
+            long u = TickMetrics.Histogram.upper(TickMetrics.Histogram.bucket(v));
+            assertTrue(v + " -> " + u, u >= v && u <= v + v / 8 + 1);
+        }
+        assertEquals(13, h.count());
+        assertEquals(531_441, h.max());
+        assertTrue(h.percentile(0.5) >= 729 && h.percentile(0.5) <= 729 * 9 / 8 + 1);
+    }
+
+    @Test
+    public void registersAsAnMXBean() throws Exception {
+        TickMetrics m = new TickMetrics().register("interlocking:type=TickMetrics,name=test");
+        javax.management.MBeanServer srv = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+        javax.management.ObjectName name = new javax.management.ObjectName("interlocking:type=TickMetrics,name=test");
+        try {
+            assertEquals(0L, srv.getAttribute(name, "Ticks"));
+            assertEquals(7, ((String[]) srv.getAttribute(name, "Phases")).length);
+        } finally {
+            srv.unregisterMBean(name);
+        }
+    }
+}
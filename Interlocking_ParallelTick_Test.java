@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_ParallelTick_Test {
+
+    /** Fills both engines with the same trains: one in roughly every third section, heading for a few corners. */
+    private static String[] populate(Topology t, int w, long seed, InterlockingImpl... ils) {
+        Random r = new Random(seed);
+        int[] dests = {0, w - 1, w * (w - 1), w * w - 1, w / 2};
+        List<String> names = new ArrayList<>();
+        for (int s = t.min; s <= t.max; s++) {
+            if (r.nextInt(3) != 0) continue;
+            String name = "T" + Integer.toString(r.nextInt(1 << 30), 36) + "." + s;
+            int dest = dests[r.nextInt(dests.length)];
+            if (dest == s) continue;
+            for (InterlockingImpl il : ils) il.addTrain(name, s, dest);
+            names.add(name);
+        }
+        return names.toArray(new String[0]);
+    }
+
+    private static void assertSameState(Topology t, InterlockingImpl a, InterlockingImpl b, String what) {
+        for (int s = t.min; s <= t.max; s++) assertEquals(what + " section " + s, a.getSection(s), b.getSection(s));
+    }
+
+    @Test
+    public void largeTicksMatchTheSequentialEngine() {
+        int w = 150;
+        Topology t = Grids.grid(w);
+        InterlockingImpl seq = new InterlockingImpl(t), par = new InterlockingImpl(t);
+        par.setParallelTicks(1);
+        String[] names = populate(t, w, 1, seq, par);
+        assertTrue(names.length > 5_000);
+        for (int tick = 0; tick < 30; tick++) {
+            List<String> live = new ArrayList<>();
+            for (String n : names) if (seq.getTrain(n) >= 0) live.add(n);
+            String[] asked = live.toArray(new String[0]);
+            assertEquals("tick " + tick, seq.moveTrains(asked), par.moveTrains(asked));
+            assertSameState(t, seq, par, "tick " + tick);
+        }
+    }
+
+    @Test
+    public void batchRunsMatch() {
+        int w = 100;
+        Topology t = Grids.grid(w);
+        InterlockingImpl seq = new InterlockingImpl(t), par = new InterlockingImpl(t);
+        par.setParallelTicks(1);
+        populate(t, w, 2, seq, par);
+        Simulation a = seq.simulate(40), b = par.simulate(40);
+        for (int tick = 0; tick < 40; tick++) assertEquals("tick " + tick, a.moved(tick), b.moved(tick));
+        assertTrue(a.totalMoved() > 0);
+        assertSameState(t, seq, par, "after the run");
+    }
+
+    @Test
+    public void reroutingAndRotationsMatch() {
+        int w = 40;
+        Topology t = Grids.grid(w);
+        InterlockingImpl seq = new InterlockingImpl(t), par = new InterlockingImpl(t);
+        for (InterlockingImpl il : new InterlockingImpl[] {seq, par}) {
+            il.setRerouting(2, 3);
+            il.setAllowRotations(true);
+        }
+        par.setParallelTicks(1);
+        String[] names = populate(t, w, 3, seq, par);
+        for (int tick = 0; tick < 60; tick++) {
+            List<String> live = new ArrayList<>();
+            for (String n : names) if (seq.getTrain(n) >= 0) live.add(n);
+            live.add(live.get(0));                      // listed twice, moves once
+            String[] asked = live.toArray(new String[0]);
+            assertEquals("tick " + tick, seq.moveTrains(asked), par.moveTrains(asked));
+            assertSameState(t, seq, par, "tick " + tick);
+        }
+    }
+
+    @Test
+    public void smallTicksStaySequentialAndBadNamesAreReportedInOrder() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setParallelTicks(2);
+        il.addTrain("A", 1, 9);
+        assertEquals(1, il.moveTrains(new String[] {"A"}));
+        try {
+            il.moveTrains(new String[] {"A", null, "ghost", "phantom"});
+            fail("unknown train accepted");
+        } catch (IllegalArgumentException e) {
+            assertEquals("train not present: ghost", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThresholdIsRejected() {
+        new InterlockingImpl().setParallelTicks(-1);
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class Interlocking_Policy_Test {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // Two feeders 0 and 1 merge into 2, which runs on to the exit 3.
+    private static final String MERGE =
+        "sections 0 3\n" +
+        "link 0 2\nlink 1 2\nlink 2 3\n" +
+        "exit 3\n";
+
+    private static Topology parse(String text) throws IOException {
+        return Topology.parse(new StringReader(text));
+    }
+
+    /** Which of the two feeder trains wins the merge. */
+    private static String winner(InterlockingImpl il) {
+        il.moveTrains(new String[] {"A", "B"});
+        return il.getSection(2);
+    }
+
+    @Test
+    public void corridorDeclaresTheCrossoverRanking() {
+        Policy p = Topology.corridor().policy();
+        assertArrayEquals(new String[] {"passenger", "freight"}, p.classes());
+        assertEquals(2, p.priority(0, 1, 5));
+        assertEquals(2, p.priority(1, 6, 2));
+        assertEquals(0, p.priority(0, 4, 7));
+        assertEquals(1, p.priority(1, 9, 8));
+    }
+
+    @Test
+    public void tiesFallBackToNames() throws IOException {
+        InterlockingImpl il = new InterlockingImpl(parse(MERGE));
+        il.addTrain("A", 0, 3);
+        il.addTrain("B", 1, 3);
+        assertEquals("A", winner(il));
+    }
+
+    @Test
+    public void priorityDirectiveReordersTheMerge() throws IOException {
+        InterlockingImpl il = new InterlockingImpl(parse(MERGE + "priority 5 1 2\n"));
+        il.addTrain("A", 0, 3);
+        il.addTrain("B", 1, 3);
+        assertEquals("B", winner(il));
+    }
+
+    @Test
+    public void classPrioritiesFollowTheTrain() throws IOException {
+        Topology t = parse(MERGE + "classes passenger freight\npriority freight 0 0 2 1 2\n");
+        InterlockingImpl il = new InterlockingImpl(t);
+        il.addTrain("A", 0, 3, "freight");
+        il.addTrain("B", 1, 3);
+        assertEquals("B", winner(il));
+        assertEquals(0, t.policy().priority(t.trainClass("freight"), 0, 2));
+        assertEquals(1, t.policy().priority(t.trainClass("passenger"), 0, 2));
+    }
+
+    @Test
+    public void customPolicyIsCompiled() throws IOException {
+        Topology t = new Topology.Builder(0, 3).link(0, 2).link(1, 2).link(2, 3).exit(3)
+            .policy((cls, from, to) -> from == 1 ? 9 : 1).build();
+        InterlockingImpl il = new InterlockingImpl(t);
+        il.addTrain("A", 0, 3);
+        il.addTrain("B", 1, 3);
+        assertEquals("B", winner(il));
+        assertNotEquals(parse(MERGE).fingerprint(), t.fingerprint());
+    }
+
+    @Test
+    public void groupCrossesEveryPair() throws IOException {
+        Topology t = parse("sections 0 5\nlink 0 1\nlink 2 3\nlink 4 5\ngroup 0 1 2 3 4 5\n");
+        assertTrue(t.crosses(t.edge(0, 1), t.edge(3, 2)));
+        assertTrue(t.crosses(t.edge(2, 3), t.edge(4, 5)));
+        assertTrue(t.crosses(t.edge(1, 0), t.edge(5, 4)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownClassIsRejected() throws IOException {
+        parse(MERGE + "priority freight 0 0 2\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void priorityOnMissingLinkIsRejected() throws IOException {
+        parse(MERGE + "priority 3 0 3\n");
+    }
+
+    @Test
+    public void classSurvivesJournalAndImage() throws IOException {
+        Topology t = parse(MERGE + "classes passenger freight\npriority freight 0 0 2 1 2\n");
+        Path file = tmp.getRoot().toPath().resolve("merge.journal");
+        InterlockingImpl live = new InterlockingImpl(t);
+        try (Journal j = Journal.open(file, t)) {
+            live.setJournal(j);
+            live.addTrain("A", 0, 3, "freight");
+            live.addTrain("B", 1, 3);
+        }
+        InterlockingImpl replayed = new InterlockingImpl(t);
+        Journal.replay(file, replayed, 0);
+        assertEquals("B", winner(replayed));
+
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        live.snapshot(Channels.newChannel(image));
+        InterlockingImpl restored = new InterlockingImpl(t);
+        restored.restore(new ByteArrayInputStream(image.toByteArray()));
+        assertEquals(t.trainClass("freight"), restored.tClass[restored.handle("A")]);
+        assertEquals("B", winner(restored));
+    }
+}
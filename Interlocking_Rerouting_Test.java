@@ -0,0 +1,109 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Rerouting_Test {
+
+    // 0 - 1 - 2 - 4 (exit), with a parallel branch 1 - 3 - 4 of the same length.
+    private static Topology diamond() {
+        return new Topology.Builder(0, 4).link(0, 1).link(1, 2).link(1, 3).link(2, 4).link(3, 4).exit(4).build();
+    }
+
+    // 0 - 1 - 2 - 3 (exit), with a longer loop 1 - 5 - 6 - 3.
+    private static Topology loop() {
+        return new Topology.Builder(0, 6).link(0, 1).link(1, 2).link(2, 3).link(1, 5).link(5, 6).link(6, 3).exit(3).build();
+    }
+
+    @Test
+    public void waitsBehindABlockerByDefault() {
+        InterlockingImpl il = new InterlockingImpl(diamond());
+        il.addTrain("block", 2, 2);
+        il.addTrain("A", 1, 4);
+        for (int t = 0; t < 5; t++) assertEquals(0, il.moveTrains(new String[] {"A"}));
+        assertEquals(1, il.getTrain("A"));
+    }
+
+    @Test
+    public void takesTheParallelBranchAfterItsPatienceRunsOut() {
+        InterlockingImpl il = new InterlockingImpl(diamond());
+        il.setRerouting(2, 0);
+        il.addTrain("block", 2, 2);
+        il.addTrain("A", 1, 4);
+        assertEquals(0, il.moveTrains(new String[] {"A"}));
+        assertEquals(0, il.moveTrains(new String[] {"A"}));
+        assertEquals(1, il.moveTrains(new String[] {"A"}));
+        assertEquals(3, il.getTrain("A"));
+        il.moveTrains(new String[] {"A"});
+        assertEquals(4, il.getTrain("A"));
+    }
+
+    @Test
+    public void detoursStayWithinTheAllowance() {
+        InterlockingImpl strict = new InterlockingImpl(loop());
+        strict.setRerouting(1, 0);
+        strict.addTrain("block", 2, 2);
+        strict.addTrain("A", 1, 3);
+        for (int t = 0; t < 4; t++) strict.moveTrains(new String[] {"A"});
+        assertEquals("a longer path is not an equal alternative", 1, strict.getTrain("A"));
+
+        InterlockingImpl loose = new InterlockingImpl(loop());
+        loose.setRerouting(1, 1);
+        loose.addTrain("block", 2, 2);
+        loose.addTrain("A", 1, 3);
+        loose.moveTrains(new String[] {"A"});
+        loose.moveTrains(new String[] {"A"});
+        assertEquals(5, loose.getTrain("A"));
+        loose.moveTrains(new String[] {"A"});
+        loose.moveTrains(new String[] {"A"});
+        assertEquals(3, loose.getTrain("A"));
+    }
+
+    @Test
+    public void neverTurnsBack() {
+        InterlockingImpl il = new InterlockingImpl(loop());
+        il.setRerouting(1, 4);
+        il.addTrain("A", 0, 3);
+        il.moveTrains(new String[] {"A"});
+        il.addTrain("block", 2, 2);
+        il.addTrain("B", 5, 5);
+        for (int t = 0; t < 4; t++) il.moveTrains(new String[] {"A"});
+        assertEquals("0 is where A came from", 1, il.getTrain("A"));
+    }
+
+    @Test
+    public void concurrentEngineLocksEveryCandidate() {
+        ConcurrentInterlocking il = new ConcurrentInterlocking(diamond(), 16, 5);
+        il.setRerouting(1, 0);
+        il.addTrain("block", 2, 2);
+        int a = il.addTrainHandle("A", 1, 4);
+        il.moveTrains(new int[] {a});
+        assertEquals(1, il.moveTrains(new int[] {a}));
+        assertEquals(3, il.getTrain(a));
+    }
+
+    // Feeds row 0 of the grid west→east past a train parked halfway along; returns exits.
+    private static int feedPastBlocker(InterlockingImpl il, int ticks) {
+        int W = Interlocking_Concurrent_Test.W;
+        il.addTrain("parked", W / 2, W / 2);
+        int out = 0;
+        for (int t = 0; t < ticks; t++) {
+            if (t % 2 == 0 && il.getSection(0) == null) il.addTrain("E" + t, 0, W - 1);
+            int[] hs = new int[il.nTrains];
+            int n = 0;
+            for (int h = 1; h < il.nTrains; h++) if (il.getTrain(h) >= 0) hs[n++] = h;
+            int before = n;
+            if (n > 0) il.moveTrains(java.util.Arrays.copyOf(hs, n));
+            for (int k = 0; k < before; k++) if (il.getTrain(hs[k]) < 0) out++;
+        }
+        return out;
+    }
+
+    @Test
+    public void reroutingKeepsTrafficFlowingPastABlockage() {
+        InterlockingImpl fixed = new InterlockingImpl(Interlocking_Concurrent_Test.grid());
+        assertEquals(0, feedPastBlocker(fixed, 300));
+
+        InterlockingImpl dynamic = new InterlockingImpl(Interlocking_Concurrent_Test.grid());
+        dynamic.setRerouting(2, 2);
+        assertTrue(feedPastBlocker(dynamic, 300) > 50);
+    }
+}
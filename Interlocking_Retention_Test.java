@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class Interlocking_Retention_Test {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void exit(InterlockingImpl il, String name) {
+        while (il.getTrain(name) >= 0) il.moveTrains(new String[] {name});
+    }
+
+    @Test
+    public void exitedTrainStillReadsAsGone() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setRetention(8, 1_000);
+        il.addTrain("A", 9, 11);
+        exit(il, "A");
+        assertEquals(-1, il.getTrain("A"));
+        assertEquals(1, il.tombstones());
+    }
+
+    @Test
+    public void trainsExitedBeforeRetentionAreCompacted() {
+        InterlockingImpl il = new InterlockingImpl();
+        int a = il.addTrainHandle("A", 9, 11);
+        exit(il, "A");
+        il.setRetention(8, 1_000);
+        assertEquals(-1, il.getTrain("A"));
+        assertEquals(a, il.addTrainHandle("B", 1, 9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tombstoneEvictedByCount() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setRetention(2, 1_000);
+        for (String n : new String[] {"A", "B", "C"}) {
+            il.addTrain(n, 9, 11);
+            exit(il, n);
+        }
+        assertEquals(-1, il.getTrain("B"));
+        assertEquals(-1, il.getTrain("C"));
+        il.getTrain("A");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tombstoneEvictedByAge() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setRetention(8, 3);
+        il.addTrain("A", 9, 11);
+        exit(il, "A");
+        il.addTrain("B", 1, 9);
+        for (int t = 0; t < 3; t++) il.moveTrains(new String[] {"B"});
+        assertEquals(-1, il.getTrain("A"));
+        il.moveTrains(new String[] {"B"});
+        il.getTrain("A");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tombstonedNameIsStillTaken() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setRetention(8, 1_000);
+        il.addTrain("A", 9, 11);
+        exit(il, "A");
+        il.addTrain("A", 1, 9);
+    }
+
+    @Test
+    public void snapshotsKeepTheNamesOfRecycledHandles() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setSnapshots(true);
+        il.setRetention(8, 1_000);
+        int a = il.addTrainHandle("A", 9, 11);
+        Snapshot before = il.snapshot();
+        exit(il, "A");
+        assertEquals(a, il.addTrainHandle("B", 1, 9));
+        assertEquals("A", before.trainName(a));
+        assertEquals("A", before.getSection(9));
+        assertEquals("B", il.snapshot().trainName(a));
+        assertEquals("B", il.snapshot().getSection(1));
+    }
+
+    @Test
+    public void handlesAreRecycled() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setRetention(64, 1_000);
+        for (int i = 0; i < 10_000; i++) {
+            il.addTrain("T" + i, 9, 11);
+            exit(il, "T" + i);
+        }
+        assertEquals(1, il.nTrains);
+        assertTrue(il.tombstones() <= 64);
+        assertEquals(-1, il.getTrain("T9999"));
+    }
+
+    @Test
+    public void replayReissuesRecycledHandles() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("grid.journal");
+        Topology grid = Interlocking_Concurrent_Test.grid();
+        int W = Interlocking_Concurrent_Test.W;
+        InterlockingImpl live = new InterlockingImpl(grid);
+        live.setRetention(16, 50);
+        try (Journal j = Journal.open(file, grid)) {
+            live.setJournal(j);
+            int named = 0;
+            for (int t = 0; t < 400; t++) {
+                int i = t % W;
+                try {
+                    if (t % 2 == 0) live.addTrain("E" + named, i * W, i * W + W - 1);
+                    else live.addTrain("S" + named, i, (W - 1) * W + i);
+                    named++;
+                } catch (IllegalStateException occupied) { }
+                int[] hs = new int[live.nTrains];
+                int n = 0;
+                for (int h = 0; h < live.nTrains; h++) if (live.getTrain(h) >= 0) hs[n++] = h;
+                if (n > 0) live.moveTrains(java.util.Arrays.copyOf(hs, n));
+            }
+            assertTrue("handles were reused", live.nTrains < named);
+        }
+
+        InterlockingImpl back = new InterlockingImpl(grid);
+        back.setRetention(16, 50);
+        Journal.replay(file, back, 0);
+        assertEquals(live.nTrains, back.nTrains);
+        assertEquals(live.tombstones(), back.tombstones());
+        for (int s = grid.min(); s <= grid.max(); s++)
+            assertEquals("section " + s, live.getSection(s), back.getSection(s));
+        for (int h = 0; h < live.nTrains; h++) {
+            assertEquals(live.getTrain(h), back.getTrain(h));
+            if (live.getTrain(h) >= 0) assertEquals(h, back.handle(live.trainName(h)));
+        }
+    }
+}
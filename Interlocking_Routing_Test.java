@@ -0,0 +1,48 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Routing_Test {
+
+    // 1-2-3-4-5-6 ring closed by 6-1: the short way from 2 to 6 is via 1.
+    private static Topology ring() {
+        Topology.Builder b = new Topology.Builder(1, 6);
+        for (int s = 1; s < 6; s++) b.link(s, s + 1);
+        return b.link(6, 1).exit(6).build();
+    }
+
+    @Test
+    public void nextHopFollowsShortestPath() {
+        Routing r = new Routing(ring());
+        assertEquals(1, r.next(2, 6));
+        assertEquals(6, r.next(1, 6));
+        assertEquals(5, r.next(4, 6));
+        assertEquals(-1, r.next(6, 6));
+    }
+
+    @Test
+    public void treesAreSharedPerDestination() {
+        Routing r = new Routing(Topology.corridor());
+        r.next(1, 9); r.next(4, 9); r.next(10, 9);
+        assertEquals(1, r.cached());
+        r.next(11, 3);
+        assertEquals(2, r.cached());
+    }
+
+    @Test
+    public void trainWalksTheRingTheShortWay() {
+        Interlocking il = new InterlockingImpl(ring());
+        il.addTrain("R", 2, 6);
+        il.moveTrains(new String[] {"R"});
+        assertEquals(1, il.getTrain("R"));
+        il.moveTrains(new String[] {"R"});
+        assertEquals(6, il.getTrain("R"));
+        il.moveTrains(new String[] {"R"});
+        assertEquals(-1, il.getTrain("R"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unreachableDestinationThrows() {
+        Topology split = new Topology.Builder(1, 4).link(1, 2).link(3, 4).build();
+        new InterlockingImpl(split).addTrain("U", 1, 4);
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Sharded_Test {
+
+    private static final int W = Interlocking_Concurrent_Test.W;
+
+    // Runs the same random traffic through the reference engine and a sharded one, comparing every tick.
+    private static void sameAsSingleThreaded(Topology t, InterlockingImpl ref, ShardedInterlocking sh, long seed) {
+        Random r = new Random(seed);
+        int[] exits = new int[t.sections()];
+        int ne = 0;
+        for (int s = t.min; s <= t.max; s++) if (t.isExit(s)) exits[ne++] = s;
+        for (int tick = 0; tick < 400; tick++) {
+            for (int a = 0; a < 3; a++) {
+                String name = "T" + tick + "." + a;
+                int entry = t.min + r.nextInt(t.sections()), dest = exits[r.nextInt(ne)];
+                boolean ok;
+                try { ref.addTrain(name, entry, dest); ok = true; }
+                catch (RuntimeException busyOrUnreachable) { ok = false; }
+                if (ok) sh.addTrain(name, entry, dest);
+            }
+            int[] live = new int[ref.nTrains];
+            int n = 0;
+            for (int h = 0; h < ref.nTrains; h++) if (ref.getTrain(h) >= 0 && r.nextInt(8) > 0) live[n++] = h;
+            if (n == 0) continue;
+            int[] hs = Arrays.copyOf(live, n);
+            assertEquals("tick " + tick, ref.moveTrains(hs), sh.moveTrains(hs));
+            for (int s = t.min; s <= t.max; s++) assertEquals("tick " + tick + " section " + s, ref.getSection(s), sh.getSection(s));
+        }
+    }
+
+    @Test
+    public void gridMatchesTheSingleThreadedEngine() {
+        Topology t = Interlocking_Concurrent_Test.grid();
+        for (long seed = 1; seed <= 5; seed++)
+            sameAsSingleThreaded(t, new InterlockingImpl(t), new ShardedInterlocking(t, 4), seed);
+    }
+
+    @Test
+    public void corridorCrossingsAndRotationsMatch() {
+        Topology t = Topology.corridor();
+        InterlockingImpl ref = new InterlockingImpl(t);
+        ShardedInterlocking sh = new ShardedInterlocking(t, 3);
+        ref.setAllowRotations(true);
+        sh.setAllowRotations(true);
+        sameAsSingleThreaded(t, ref, sh, 11);
+    }
+
+    @Test
+    public void reroutingMatches() {
+        Topology t = Interlocking_Concurrent_Test.grid();
+        InterlockingImpl ref = new InterlockingImpl(t);
+        ShardedInterlocking sh = new ShardedInterlocking(t, 6);
+        ref.setRerouting(2, 2);
+        sh.setRerouting(2, 2);
+        sameAsSingleThreaded(t, ref, sh, 3);
+    }
+
+    @Test
+    public void operatorCutOnAPrivatePool() {
+        Topology t = Interlocking_Concurrent_Test.grid();
+        int[] cut = new int[t.max + 1];
+        for (int s = 0; s < W * W; s++) cut[s] = s % W < W / 2 ? 0 : 1;   // west and east halves
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ShardedInterlocking sh = new ShardedInterlocking(t, cut, pool);
+            assertEquals(2, sh.regions());
+            sameAsSingleThreaded(t, new InterlockingImpl(t), sh, 8);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void partitionIsBalancedAndCoversEverySection() {
+        Topology t = Interlocking_Concurrent_Test.grid();
+        int[] regionOf = ShardedInterlocking.partition(t, 4);
+        int[] size = new int[4];
+        for (int s = t.min; s <= t.max; s++) size[regionOf[s]]++;
+        for (int n : size) assertEquals(t.sections() / 4, n, 1);
+        assertEquals("at most one region per section", 1, ShardedInterlocking.partition(new Topology.Builder(0, 1).link(0, 1).build(), 5)[1]);
+    }
+
+    @Test
+    public void hooksSeeEveryShardsMoves() {
+        Topology t = Interlocking_Concurrent_Test.grid();
+        ShardedInterlocking sh = new ShardedInterlocking(t, 4);
+        TickMetrics m = new TickMetrics();
+        sh.setMetrics(m);
+        int a = sh.addTrainHandle("A", 1, 0);                 // north-west corner
+        int b = sh.addTrainHandle("B", W * W - 2, W * W - 1); // south-east corner
+        assertEquals(2, sh.moveTrains(new int[] {a, b}));
+        assertEquals(2, sh.moveTrains(new int[] {a, b}));
+        assertEquals(-1, sh.getTrain("A"));
+        assertEquals(4, m.moves());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void lookaheadIsRefused() {
+        new ShardedInterlocking(Topology.corridor(), 2).setLookahead(3, 1_000_000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cutMustCoverTheCorridor() {
+        new ShardedInterlocking(Topology.corridor(), new int[] {0, 0, 1}, ForkJoinPool.commonPool());
+    }
+}
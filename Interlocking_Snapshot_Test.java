@@ -0,0 +1,118 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Snapshot_Test {
+
+    @Test
+    public void snapshotTracksEveryTick() {
+        InterlockingImpl il = new InterlockingImpl();
+        il.setSnapshots(true);
+        int a = il.addTrainHandle("A", 1, 9);
+        int b = il.addTrainHandle("B", 3, 11);
+        Snapshot s0 = il.snapshot();
+        assertEquals(0, s0.tick());
+        assertEquals(2, s0.trains());
+        assertEquals("A", s0.getSection(1));
+
+        for (int tick = 1; tick <= 3; tick++) {
+            il.moveTrains(new int[] {a, b});
+            Snapshot s = il.snapshot();
+            assertEquals(tick, s.tick());
+            for (int sec = 1; sec <= 11; sec++) assertEquals(il.getSectionHandle(sec), s.getSectionHandle(sec));
+            assertEquals(il.getTrain(a), s.getTrain(a));
+            assertEquals(il.getTrain(b), s.getTrain(b));
+        }
+        // the first snapshot is untouched by later ticks
+        assertEquals(1, s0.getTrain(a));
+        assertEquals(3, s0.getTrain(b));
+        assertEquals(a, s0.getSectionHandle(1));
+    }
+
+    @Test
+    public void publishingCopiesOnlyChangedChunks() {
+        int len = 4 * Snapshot.CHUNK;
+        Topology.Builder tb = new Topology.Builder(0, len - 1);
+        for (int s = 0; s < len - 1; s++) tb.link(s, s + 1);
+        InterlockingImpl il = new InterlockingImpl(tb.exit(len - 1).build());
+        int far = il.addTrainHandle("far", len - 10, len - 1);
+        il.setSnapshots(true);
+        Snapshot before = il.snapshot();
+        il.moveTrains(new int[] {far});
+        Snapshot after = il.snapshot();
+        assertEquals(len - 9, after.getTrain(far));
+        assertEquals(-1, after.getSectionHandle(len - 10));
+        assertEquals(far, before.getSectionHandle(len - 10));
+        assertEquals(-1, after.getSectionHandle(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void snapshotsAreOffByDefault() {
+        new InterlockingImpl().snapshot();
+    }
+
+    @Test
+    public void readersAlwaysSeeAConsistentCorridor() throws Exception {
+        ConcurrentInterlocking il = new ConcurrentInterlocking(Interlocking_Concurrent_Test.grid(), 50_000, 16);
+        il.setSnapshots(true);
+        int W = Interlocking_Concurrent_Test.W, threads = 4;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong views = new AtomicLong();
+
+        Thread reader = new Thread(() -> {
+            long last = -1;
+            try {
+                while (!done.get()) {
+                    Snapshot s = il.snapshot();
+                    assertTrue("ticks never go backwards", s.tick() >= last);
+                    last = s.tick();
+                    for (int sec = 0; sec < W * W; sec++) {
+                        int h = s.getSectionHandle(sec);
+                        if (h >= 0) assertEquals("section " + sec, sec, s.getTrain(h));
+                    }
+                    for (int h = 0; h < s.trains(); h++) {
+                        int at = s.getTrain(h);
+                        if (at >= 0) assertEquals("train " + h, h, s.getSectionHandle(at));
+                    }
+                    views.incrementAndGet();
+                }
+            } catch (Throwable t) { failure.compareAndSet(null, t); }
+        });
+        reader.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger named = new AtomicInteger();
+        Future<?>[] workers = new Future<?>[threads];
+        for (int w = 0; w < threads; w++) {
+            int row = w;                        // each dispatcher runs its own rows west→east
+            workers[w] = pool.submit(() -> {
+                int[] live = new int[W];
+                int n = 0;
+                for (int tick = 0; tick < 3_000; tick++) {
+                    int r = row + threads * (tick % (W / threads));
+                    if (tick % 3 == 0) {
+                        try {
+                            int h = il.addTrainHandle("T" + named.getAndIncrement(), r * W, r * W + W - 1);
+                            live[n++ % W] = h;
+                        } catch (IllegalStateException ignored) { }
+                    }
+                    for (int i = 0; i < Math.min(n, W); i++)
+                        if (il.getTrain(live[i]) >= 0) il.moveTrains(new int[] {live[i]});
+                }
+                return null;
+            });
+        }
+        for (Future<?> f : workers) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        done.set(true);
+        reader.join();
+
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertTrue(views.get() > 0);
+        Snapshot last = il.snapshot();
+        for (int sec = 0; sec < W * W; sec++) assertEquals(il.getSectionHandle(sec), last.getSectionHandle(sec));
+    }
+}
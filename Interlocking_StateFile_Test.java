@@ -0,0 +1,101 @@
+import java.io.*;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class Interlocking_StateFile_Test {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] image(InterlockingImpl il) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        il.snapshot(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTripKeepsEveryTrain() throws IOException {
+        Topology grid = Interlocking_Concurrent_Test.grid();
+        InterlockingImpl live = new InterlockingImpl(grid);
+        Interlocking_Journal_Test.drive(live, 150);
+
+        InterlockingImpl back = new InterlockingImpl(grid);
+        assertEquals(0, back.restore(new ByteArrayInputStream(image(live))));
+        Interlocking_Journal_Test.assertSameState(live, back);
+
+        // and both engines carry on identically
+        Interlocking_Journal_Test.drive(live, 50);
+        Interlocking_Journal_Test.drive(back, 50);
+        Interlocking_Journal_Test.assertSameState(live, back);
+    }
+
+    @Test
+    public void restoreThenReplayJournalTail() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("tail.journal");
+        Topology grid = Interlocking_Concurrent_Test.grid();
+        InterlockingImpl live = new InterlockingImpl(grid);
+        byte[] img;
+        try (Journal j = Journal.open(file, grid)) {
+            live.setJournal(j);
+            Interlocking_Journal_Test.drive(live, 100);
+            img = image(live);
+            Interlocking_Journal_Test.drive(live, 100);
+        }
+        InterlockingImpl back = new InterlockingImpl(grid);
+        back.restore(new ByteArrayInputStream(img), file);
+        Interlocking_Journal_Test.assertSameState(live, back);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptImageIsRejected() throws IOException {
+        InterlockingImpl live = new InterlockingImpl();
+        live.addTrain("A", 1, 9);
+        byte[] img = image(live);
+        img[img.length - 6] ^= 1;                 // inside the name
+        new InterlockingImpl().restore(new ByteArrayInputStream(img));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherTopologyIsRejected() throws IOException {
+        byte[] img = image(new InterlockingImpl());
+        new InterlockingImpl(Interlocking_Concurrent_Test.grid()).restore(new ByteArrayInputStream(img));
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedImageIsRejected() throws IOException {
+        InterlockingImpl live = new InterlockingImpl();
+        live.addTrain("A", 1, 9);
+        byte[] img = image(live);
+        new InterlockingImpl().restore(new ByteArrayInputStream(java.util.Arrays.copyOf(img, img.length - 3)));
+    }
+
+    @Test
+    public void impossibleRecordsAreRejectedBeforeAnythingIsInstalled() {
+        // 0 - 1 - 2    3 - 4 - 5: A at 0 heading for 2 is fine; B breaks one rule at a time.
+        Topology t = new Topology.Builder(0, 5).link(0, 1).link(1, 2).link(3, 4).link(4, 5).exit(2).exit(5).build();
+        int[][] bad = {
+            {1, 99, -1},        // destination out of range
+            {1, 2, 77},         // previous section out of range
+            {1, 2, 5},          // previous section not next to 1
+            {1, 4, -1},         // 4 cannot be reached from 1
+            {0, 2, -1},         // same section as A
+            {-7, 2, -1},        // position out of range
+        };
+        for (int[] b : bad) {
+            InterlockingImpl il = new InterlockingImpl(t);
+            try {
+                il.load(2, new String[] {"A", "B"}, new int[] {0, b[0]}, new int[] {2, b[1]}, new int[] {-1, b[2]},
+                        new boolean[2], new int[2]);
+                fail("accepted " + java.util.Arrays.toString(b));
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains(" B"));
+            }
+            assertNull("A was installed", il.getSection(0));
+            il.addTrain("A", 0, 2);             // still empty, so the name is free
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.StringReader;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Interlocking_Topology_Test {
+
+    static final String CORRIDOR =
+          "# stock corridor\n"
+        + "sections 1 11\n"
+        + "link 1 5\nlink 5 9\nlink 9 8\nlink 2 6\nlink 6 10\nlink 6 9\n"
+        + "link 3 7\nlink 7 11\nlink 7 4\nlink 4 5\n"
+        + "exit 2 3 4 8 9 11\n"
+        + "cross 1 5 7 4\ncross 2 6 7 4\n";
+
+    @Test
+    public void parsedCorridorMatchesStockCorridor() throws Exception {
+        Topology parsed = Topology.parse(new StringReader(CORRIDOR));
+        Topology stock = Topology.corridor();
+        assertEquals(stock.sections(), parsed.sections());
+        assertEquals(stock.links(), parsed.links());
+        for (int s = stock.min(); s <= stock.max(); s++) {
+            assertEquals(stock.isExit(s), parsed.isExit(s));
+            assertEquals(stock.degree(s), parsed.degree(s));
+            for (int i = 0; i < stock.degree(s); i++)
+                assertEquals(stock.neighbour(s, i), parsed.neighbour(s, i));
+        }
+    }
+
+    @Test
+    public void parsedCorridorStillSerializesTheCrossing() throws Exception {
+        Interlocking il = new InterlockingImpl(Topology.parse(new StringReader(CORRIDOR)));
+        il.addTrain("A", 1, 9);
+        il.addTrain("B", 7, 4);
+        assertEquals(1, il.moveTrains(new String[] {"A","B"}));
+    }
+
+    // A 100k-section line: the train must walk the whole way and exit at the far end.
+    @Test
+    public void longCorridorIsRoutable() {
+        int n = 100_000;
+        Topology.Builder b = new Topology.Builder(1, n);
+        for (int s = 1; s < n; s++) b.link(s, s + 1);
+        b.exit(n);
+        Interlocking il = new InterlockingImpl(b.build());
+
+        il.addTrain("L", 1, 3);
+        il.moveTrains(new String[] {"L"});
+        il.moveTrains(new String[] {"L"});
+        assertEquals(3, il.getTrain("L"));
+        assertEquals("L", il.getSection(3));
+        assertNull(il.getSection(n));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sectionOutsideLoadedRangeThrows() {
+        Interlocking il = new InterlockingImpl(new Topology.Builder(1, 3).link(1, 2).link(2, 3).build());
+        il.getSection(4);
+    }
+
+    @Test
+    public void malformedLineReportsLineNumber() throws Exception {
+        try {
+            Topology.parse(new StringReader("sections 1 3\nlink 1 2\nlink 2 9\n"));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("topology line 3"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void crossingOnMissingLinkIsRejected() {
+        new Topology.Builder(1, 4).link(1, 2).link(3, 4).cross(1, 2, 1, 3).build();
+    }
+}
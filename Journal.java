@@ -0,0 +1,217 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only binary journal of committed engine changes, written through a
+ * memory-mapped file.
+ *
+ * Every {@code addTrain} is one record, and every tick that moved anything is one record
+ * holding the new section of each train that moved (-1 for an exit). A tick's outcome is
+ * therefore group-committed as a single append, however many trains moved. Replay
+ * applies the recorded outcomes directly; it never re-runs routing or conflict
+ * resolution.
+ *
+ * Layout: a 24-byte header (magic, version, topology fingerprint, reserved), then
+ * records of {@code [length][crc32c][payload]}. The length word is stored last, so a
+ * record torn by a crash reads as length 0 or fails its checksum, and replay stops
+ * cleanly before it. Records are visible to other processes as soon as they are written.
+ * They survive a process crash because they sit in the OS page cache. Call
+ * {@link #setForce(boolean)} to also flush each record to the device.
+ *
+ * The file is mapped in {@link #REGION}-byte windows and grows one window at a time, so
+ * the tail of the file is zero-filled until written.
+ */
+public final class Journal implements Closeable {
+
+    static final int MAGIC=0x494C4A31;          // "ILJ1"
+    static final int VERSION=2;
+    static final int HEADER=24;
+    static final long REGION=64L<<20;
+
+    static final byte ADD=1, TICK=2;
+
+    private final FileChannel ch;
+    private final CRC32C crc=new CRC32C();
+    private MappedByteBuffer buf;
+    private long base;                  // file offset of buf's position 0
+    private long pos;                   // file offset of the next record
+    private boolean force=false;
+
+    private Journal(FileChannel ch, long pos){ this.ch=ch; this.pos=pos; }
+
+    /**
+     * Opens {@code file} for appending, creating it if needed; new records go after the
+     * last intact one.
+     * @throws IOException if the file is not a journal or belongs to another topology
+     */
+    public static Journal open(Path file, Topology topo) throws IOException {
+        FileChannel ch=FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Journal j;
+            if (ch.size()==0){
+                j=new Journal(ch, 0);
+                j.window(0, HEADER);
+                j.buf.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, topo.fingerprint()).putLong(16, 0);
+                j.pos=HEADER;
+            } else {
+                Reader r=new Reader(ch, topo);
+                while (r.next()) { }
+                j=new Journal(ch, r.pos);
+            }
+            return j;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** Flush every record to the storage device before the tick returns (slow, off by default). */
+    public void setForce(boolean on){ force=on; }
+
+    /** File offset just past the last record; a snapshot taken now replays from here. */
+    public synchronized long position(){ return pos; }
+
+    // ----- Appending -----
+
+    synchronized void add(int h, String name, int entry, int dest, int cls){
+        byte[] nm=name.getBytes(StandardCharsets.UTF_8);
+        int len=1+4+4+4+4+4+nm.length;
+        int p=begin(len);
+        buf.put(p, ADD).putInt(p+1, h).putInt(p+5, entry).putInt(p+9, dest).putInt(p+13, cls).putInt(p+17, nm.length);
+        buf.put(p+21, nm);
+        end(len);
+    }
+
+    /** One tick: intents win[0..done) moved, train iTrain[c] to iNext[c]. */
+    synchronized void tick(int[] win, int done, int[] iTrain, int[] iNext){
+        if (done==0) return;
+        int len=1+4+8*done;
+        int p=begin(len);
+        buf.put(p, TICK).putInt(p+1, done);
+        p+=5;
+        for (int k=0;k<done;k++, p+=8){
+            int c=win[k];
+            buf.putInt(p, iTrain[c]).putInt(p+4, iNext[c]);
+        }
+        end(len);
+    }
+
+    /** Makes room for a payload of len bytes; returns the buffer index where it starts. */
+    private int begin(int len){
+        long need=8L+len;
+        if (buf==null || pos+need>base+buf.capacity()) window(pos, need);
+        return (int)(pos-base)+8;
+    }
+
+    /** Checksums the payload, then publishes the record by writing its length. */
+    private void end(int len){
+        int p=(int)(pos-base);
+        buf.limit(p+8+len).position(p+8);
+        crc.reset();
+        crc.update(buf);
+        buf.clear();
+        buf.putInt(p+4, (int)crc.getValue());
+        buf.putInt(p, len);
+        if (force) buf.force(p, 8+len);
+        pos+=8+len;
+    }
+
+    private void window(long at, long need){
+        try {
+            buf=ch.map(FileChannel.MapMode.READ_WRITE, at, Math.max(REGION, need));
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            base=at;
+        } catch (IOException e) {
+            throw new UncheckedIOException("journal: cannot map "+at, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buf=null;
+        ch.close();
+    }
+
+    // ----- Replay -----
+
+    /**
+     * Applies every intact record of {@code file} from offset {@code from} (use 0 for the
+     * whole journal) to {@code il}. The engine must hold exactly the state the journal had
+     * reached at {@code from}, which for 0 means a new, empty engine.
+     * @return the offset just past the last record applied
+     */
+    public static long replay(Path file, InterlockingImpl il, long from) throws IOException {
+        try (FileChannel ch=FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader r=new Reader(ch, il.topo);
+            if (from>r.pos) r.pos=from;
+            int[] hs=new int[16], to=new int[16];
+            while (r.next()){
+                MappedByteBuffer b=r.buf;
+                int p=r.payload;
+                if (b.get(p)==ADD){
+                    byte[] nm=new byte[b.getInt(p+17)];
+                    b.get(p+21, nm);
+                    il.replayAdd(b.getInt(p+1), new String(nm, StandardCharsets.UTF_8), b.getInt(p+5), b.getInt(p+9), b.getInt(p+13));
+                } else {
+                    int n=b.getInt(p+1);
+                    if (hs.length<n){ hs=new int[n]; to=new int[n]; }
+                    p+=5;
+                    for (int k=0;k<n;k++, p+=8){ hs[k]=b.getInt(p); to[k]=b.getInt(p+4); }
+                    il.replayTick(hs, to, n);
+                }
+            }
+            return r.pos;
+        }
+    }
+
+    /** Sequential record reader; stops at the first missing, torn or corrupt record. */
+    private static final class Reader {
+        final FileChannel ch;
+        final long size;
+        final CRC32C crc=new CRC32C();
+        MappedByteBuffer buf;
+        long base=-1, pos;
+        int payload;                    // index in buf of the current record's payload
+
+        Reader(FileChannel ch, Topology topo) throws IOException {
+            this.ch=ch;
+            size=ch.size();
+            if (size<HEADER) throw new IOException("journal: truncated header");
+            map(0, HEADER);
+            if (buf.getInt(0)!=MAGIC) throw new IOException("journal: bad magic");
+            if (buf.getInt(4)!=VERSION) throw new IOException("journal: unsupported version "+buf.getInt(4));
+            if (buf.getLong(8)!=topo.fingerprint()) throw new IOException("journal: written for a different topology");
+            pos=HEADER;
+        }
+
+        boolean next() throws IOException {
+            if (pos+8>size) return false;
+            if (pos+8>base+buf.capacity()) map(pos, 8);
+            int at=(int)(pos-base), len=buf.getInt(at);
+            if (len<=0 || pos+8+len>size) return false;
+            if (pos+8+len>base+buf.capacity()){ map(pos, 8L+len); at=0; }
+            buf.limit(at+8+len).position(at+8);
+            crc.reset();
+            crc.update(buf);
+            buf.clear();
+            if ((int)crc.getValue()!=buf.getInt(at+4)) return false;
+            payload=at+8;
+            pos+=8+len;
+            return true;
+        }
+
+        private void map(long at, long need) throws IOException {
+            buf=ch.map(FileChannel.MapMode.READ_ONLY, at, Math.min(Math.max(REGION, need), size-at));
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            base=at;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Decides which winning moves of a tick can actually be carried out.
+ *
+ * Every winner k has at most one dependency {@code dep[k]}: the winner currently sitting
+ * in its target section ({@link #FREE} if the target is empty or k is exiting,
+ * {@link #BLOCKED} if the occupant is not moving). Targets are unique within a tick, so
+ * the dependency graph is a set of disjoint chains and simple cycles, and one walk over
+ * it settles everything: a chain moves when its head moves, and a cycle (a ring of
+ * trains rotating together) moves only if rotations are enabled. Two-train cycles are
+ * head-on swaps and never move.
+ */
+final class MoveResolver {
+
+    static final int FREE=-1, BLOCKED=-2;
+
+    private static final byte UNKNOWN=0, ON_PATH=1, OK=2, NO=3;
+
+    private int[] dep=new int[16], path=new int[16];
+    private byte[] state=new byte[16];
+
+    /** Dependency scratch for n winners; fill it, then call {@link #resolve(int, boolean)}. */
+    int[] deps(int n){
+        if (dep.length<n){
+            int cap=Math.max(n, dep.length*2);
+            dep=new int[cap]; path=new int[cap]; state=new byte[cap];
+        }
+        return dep;
+    }
+
+    /**
+     * Resolves the first n entries of {@link #deps(int)}; returns how many can move.
+     * With {@code rotations} set, cycles of three or more winners move as a whole.
+     */
+    int resolve(int n, boolean rotations){
+        int[] dep=this.dep, path=this.path;
+        byte[] state=this.state;
+        for (int k=0;k<n;k++) state[k]=UNKNOWN;
+
+        int count=0;
+        for (int k=0;k<n;k++){
+            if (state[k]!=UNKNOWN) continue;
+            int len=0, u=k;
+            byte res;
+            while (true){
+                state[u]=ON_PATH; path[len++]=u;
+                int d=dep[u];
+                if (d==FREE){ res=OK; break; }
+                if (d==BLOCKED){ res=NO; break; }
+                if (state[d]==ON_PATH){
+                    int start=len-1;
+                    while (path[start]!=d) start--;
+                    res = rotations && len-start>2 ? OK : NO;
+                    break;
+                }
+                if (state[d]!=UNKNOWN){ res=state[d]; break; }
+                u=d;
+            }
+            for (int i=0;i<len;i++) state[path[i]]=res;
+            if (res==OK) count+=len;
+        }
+        return count;
+    }
+
+    boolean feasible(int k){ return state[k]==OK; }
+}
@@ -0,0 +1,28 @@
+/**
+ * Move-ordering rules of a corridor: which train classes exist and how urgent each
+ * directed move is for each class.
+ *
+ * A policy is consulted only while a {@link Topology} is built. Its answers are compiled
+ * into one flat int table per train class, indexed by directed edge id, so a tick reads a
+ * move's priority with a single array load. Crossing conflicts are declared on the
+ * topology itself ({@code cross} and {@code group}).
+ *
+ * When two moves compete, the higher priority goes first; exits always go before any
+ * move. Ties fall through to the engine's demand heuristic and then to train names.
+ * Topologies built without a policy use {@link #uniform()}, and text topologies build one
+ * from their {@code classes} and {@code priority} directives.
+ */
+public interface Policy {
+
+    /** Largest priority a move may have. */
+    int MAX_PRIORITY=0xFFFF;
+
+    /** Train class names; a train added without a class gets class 0. */
+    default String[] classes(){ return new String[] {"default"}; }
+
+    /** Priority, 0..{@link #MAX_PRIORITY}, of a class {@code cls} train moving from→to over a link. */
+    int priority(int cls, int from, int to);
+
+    /** Every move of every train has priority 1. */
+    static Policy uniform(){ return (cls,from,to) -> 1; }
+}
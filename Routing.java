@@ -0,0 +1,335 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Next-hop routing over a {@link Topology}.
+ *
+ * For every destination that is asked for, one BFS is run outward from the destination
+ * and the result is kept as a shortest-path tree: {@code tree(d)[u]} is the section a
+ * train at {@code u} moves to next on its way to {@code d}, or -1 if {@code d} is not
+ * reachable (or {@code u==d}). Trees are filled lazily and cached for the life of the
+ * engine, so a train only needs to remember its destination and every lookup is O(1).
+ * Among equally short paths the tree takes the lowest-numbered neighbour (the first in
+ * adjacency order), so a tree depends only on the closures in force: never on when it
+ * was built or how it was repaired. Engines that cache different trees still agree.
+ *
+ * Memory is one {@code int} per section per distinct destination in use, plus as much
+ * again for each destination whose distances rerouting has asked for ({@link #dist}).
+ *
+ * Sections and links can be closed and reopened at runtime. Nothing enters a closed
+ * section, though a train inside may still leave it, and nothing moves over a closed link
+ * in either direction. Cached trees are repaired in place rather than rebuilt: a closure
+ * clears only the sections whose path used what closed and re-attaches them from their
+ * intact neighbours, and a reopening spreads out from what opened only as far as paths
+ * get shorter. Only the sections whose hop count changed, and their neighbours, then
+ * choose their next hop again, which gives exactly the tree a fresh build would.
+ * The first change computes the hop counts of every cached tree, which repairs need.
+ * Changes must not overlap ticks.
+ *
+ * Lookups are safe from any thread: a tree is published with a release store once it
+ * is complete, and the build itself is serialised.
+ */
+final class Routing {
+
+    private final Topology topo;
+    private final int[][] trees;    // indexed by destination id; null until first use
+    private final int[][] dists;    // hop counts, likewise; only built for rerouting
+    private final int[] queue;
+
+    private final long[] closedSec;     // bitset over section ids
+    private final long[] closedLink;    // bitset over directed edge ids; a link closes both ways
+
+    // Repair scratch, allocated on the first change.
+    private int[] mark, stack, fifo;
+    private long[] seeds;
+    private int stamp;
+    private int[] touched, tmark;       // sections whose hop count a repair rewrote
+    private int nTouched, tstamp;
+
+    Routing(Topology topo){
+        this.topo=topo;
+        trees=new int[topo.max+1][];
+        dists=new int[topo.max+1][];
+        queue=new int[topo.sections()];
+        closedSec=new long[(topo.max>>>6)+1];
+        closedLink=new long[(topo.edges()>>>6)+1];
+    }
+
+    /** Next section from {@code cur} towards {@code dest}, or -1 when there is none. */
+    int next(int cur, int dest){ return tree(dest)[cur]; }
+
+    boolean reachable(int from, int to){ return from==to || tree(to)[from]>=0; }
+
+    private static final VarHandle TREES=MethodHandles.arrayElementVarHandle(int[][].class);
+
+    /** Shortest-path tree towards {@code dest}, built on first use. */
+    int[] tree(int dest){
+        int[] t=(int[])TREES.getAcquire(trees, dest);
+        return t!=null ? t : buildOnce(dest);
+    }
+
+    private synchronized int[] buildOnce(int dest){
+        int[] t=trees[dest];
+        if (t==null) TREES.setRelease(trees, dest, t=build(dest));
+        return t;
+    }
+
+    /**
+     * Hops from every section to {@code dest} (-1 where unreachable), built on first use.
+     * Going from {@code u} through neighbour {@code v} costs {@code 1+dist[v]-dist[u]}
+     * hops more than the shortest path, which is how rerouting ranks alternatives
+     * without searching again.
+     */
+    int[] dist(int dest){
+        int[] d=(int[])TREES.getAcquire(dists, dest);
+        return d!=null ? d : distOnce(dest);
+    }
+
+    private synchronized int[] distOnce(int dest){
+        int[] d=dists[dest];
+        if (d==null) TREES.setRelease(dists, dest, d=hops(dest));
+        return d;
+    }
+
+    /** Number of destinations whose tree is currently cached. */
+    int cached(){
+        int n=0;
+        for (int[] t: trees) if (t!=null) n++;
+        return n;
+    }
+
+    // A closed section is given a next hop (a train inside may leave) but is never expanded.
+
+    private int[] build(int dest){
+        int[] d=hops(dest), next=new int[topo.max+1];
+        Arrays.fill(next,-1);
+        for (int s=topo.min;s<=topo.max;s++) next[s]=choose(d,s);
+        return next;
+    }
+
+    /** The first neighbour of x one hop closer, over an open link into an open section; -1 at or cut off from dest. */
+    private int choose(int[] d, int x){
+        if (d[x]<=0) return -1;
+        int[] off=topo.off, adj=topo.adj;
+        for (int i=off[x];i<off[x+1];i++){
+            int v=adj[i];
+            if (d[v]==d[x]-1 && linkOpen(i) && open(v)) return v;
+        }
+        return -1;
+    }
+
+    private int[] hops(int dest){
+        int[] off=topo.off, adj=topo.adj, q=queue;
+        int[] d=new int[topo.max+1];
+        Arrays.fill(d,-1);
+        if (!open(dest)) return d;
+        int head=0, tail=0;
+        d[dest]=0;
+        q[tail++]=dest;
+        while (head<tail){
+            int u=q[head++];
+            for (int i=off[u], end=off[u+1]; i<end; i++){
+                int v=adj[i];
+                if (d[v]>=0 || !linkOpen(i)) continue;
+                d[v]=d[u]+1;
+                if (open(v)) q[tail++]=v;
+            }
+        }
+        return d;
+    }
+
+    // ----- Closures -----
+
+    boolean open(int s){ return (closedSec[s>>>6] & (1L<<s))==0; }
+
+    /** Whether the link of directed edge e is open (both directions close together). */
+    boolean linkOpen(int e){ return (closedLink[e>>>6] & (1L<<e))==0; }
+
+    /** Whether a train may move over edge e into section v. */
+    boolean passable(int e, int v){ return linkOpen(e) && open(v); }
+
+    synchronized void closeSection(int c){
+        if (!open(c)) return;
+        prepare();
+        closedSec[c>>>6]|=1L<<c;
+        for (int dest=topo.min;dest<=topo.max;dest++){
+            int[] next=trees[dest];
+            if (next==null) continue;
+            if (dest==c){ rebuild(dest); continue; }
+            int[] off=topo.off, adj=topo.adj, d=dists[dest];
+            begin();
+            touch(c);
+            int n=0;
+            for (int i=off[c];i<off[c+1];i++) if (next[adj[i]]==c) stack[n++]=adj[i];
+            cut(next, d, n);
+            settle(next, d);
+        }
+    }
+
+    synchronized void openSection(int c){
+        if (open(c)) return;
+        prepare();
+        closedSec[c>>>6]&=~(1L<<c);
+        for (int dest=topo.min;dest<=topo.max;dest++){
+            if (trees[dest]==null) continue;
+            if (dest==c){ rebuild(dest); continue; }
+            int[] next=trees[dest], d=dists[dest];
+            begin();
+            touch(c);
+            if (d[c]>=0) spread(d, c);
+            settle(next, d);
+        }
+    }
+
+    /** Closes the link a-b in both directions; e and r are its directed edge ids a→b and b→a. */
+    synchronized void closeLink(int a, int b, int e, int r){
+        if (!linkOpen(e)) return;
+        prepare();
+        closedLink[e>>>6]|=1L<<e; closedLink[r>>>6]|=1L<<r;
+        for (int dest=topo.min;dest<=topo.max;dest++){
+            int[] next=trees[dest], d=dists[dest];
+            if (next==null) continue;
+            begin();
+            touch(a); touch(b);
+            int n=0;
+            if (next[a]==b) stack[n++]=a;
+            if (next[b]==a) stack[n++]=b;
+            if (n>0) cut(next, d, n);
+            settle(next, d);
+        }
+    }
+
+    synchronized void openLink(int a, int b, int e, int r){
+        if (linkOpen(e)) return;
+        prepare();
+        closedLink[e>>>6]&=~(1L<<e); closedLink[r>>>6]&=~(1L<<r);
+        for (int dest=topo.min;dest<=topo.max;dest++){
+            if (trees[dest]==null) continue;
+            int[] next=trees[dest], d=dists[dest];
+            begin();
+            touch(a); touch(b);
+            if (attach(d, b, a)) spread(d, b);
+            else if (attach(d, a, b)) spread(d, a);
+            settle(next, d);
+        }
+    }
+
+    /**
+     * Before the first change: hop counts for every cached tree (repairs work from them)
+     * and scratch space. Hop counts cached without a tree are dropped and rebuilt on use.
+     */
+    private void prepare(){
+        if (mark==null){
+            int n=topo.max+1;
+            mark=new int[n]; stack=new int[n]; fifo=new int[n]; seeds=new long[n];
+            touched=new int[n]; tmark=new int[n];
+        }
+        for (int dest=topo.min;dest<=topo.max;dest++){
+            if (trees[dest]!=null && dists[dest]==null) dists[dest]=hops(dest);
+            else if (trees[dest]==null && dists[dest]!=null) dists[dest]=null;
+        }
+    }
+
+    private void rebuild(int dest){
+        System.arraycopy(build(dest), 0, trees[dest], 0, topo.max+1);
+        System.arraycopy(hops(dest), 0, dists[dest], 0, topo.max+1);
+    }
+
+    // Repairs below only rewrite hop counts and touch() what they rewrote; settle() then
+    // re-chooses the next hop of every touched section and of its neighbours, which are
+    // the only ones whose choice can have changed.
+
+    private void begin(){
+        if (++tstamp==0){ Arrays.fill(tmark,0); tstamp=1; }
+        nTouched=0;
+    }
+
+    private void touch(int x){
+        if (tmark[x]!=tstamp){ tmark[x]=tstamp; touched[nTouched++]=x; }
+    }
+
+    private void settle(int[] next, int[] d){
+        int[] off=topo.off, adj=topo.adj;
+        for (int k=0;k<nTouched;k++){
+            int x=touched[k];
+            next[x]=choose(d,x);
+            for (int i=off[x];i<off[x+1];i++) next[adj[i]]=choose(d,adj[i]);
+        }
+    }
+
+    /** Gives x the path through y if that is shorter than x's current one (never true for the destination). */
+    private boolean attach(int[] d, int x, int y){
+        if (d[x]==0 || !open(y) || d[y]<0 || (d[x]>=0 && d[x]<=d[y]+1)) return false;
+        d[x]=d[y]+1; touch(x);
+        return true;
+    }
+
+    /** After x's path got shorter: shortens, breadth first, every path that can now go through x. */
+    private void spread(int[] d, int x){
+        if (!open(x)) return;
+        int[] off=topo.off, adj=topo.adj, q=fifo;
+        int head=0, tail=0;
+        q[tail++]=x;
+        while (head<tail){
+            int u=q[head++];
+            for (int i=off[u];i<off[u+1];i++){
+                int z=adj[i];
+                if (!linkOpen(i) || d[z]==0 || (d[z]>=0 && d[z]<=d[u]+1)) continue;
+                d[z]=d[u]+1; touch(z);
+                if (open(z)) q[tail++]=z;
+            }
+        }
+    }
+
+    /**
+     * Repairs hop counts after stack[0..roots) lost their next hop: clears them and
+     * everything routed through them, counts each cleared section from its best intact
+     * neighbour, then fills in the cleared region in order of distance.
+     */
+    private void cut(int[] next, int[] d, int roots){
+        int[] off=topo.off, adj=topo.adj;
+        if (++stamp==0){ Arrays.fill(mark,0); stamp=1; }
+        int s=stamp, n=roots;
+        for (int k=0;k<n;k++) mark[stack[k]]=s;
+        for (int k=0;k<n;k++){                  // stack[0..n) grows into the whole cleared region
+            int y=stack[k];
+            for (int i=off[y];i<off[y+1];i++){
+                int x=adj[i];
+                if (next[x]==y && mark[x]!=s){ mark[x]=s; stack[n++]=x; }
+            }
+        }
+        for (int k=0;k<n;k++){ d[stack[k]]=-1; touch(stack[k]); }
+
+        int ns=0;
+        for (int k=0;k<n;k++){
+            int x=stack[k];
+            for (int i=off[x];i<off[x+1];i++){
+                int y=adj[i];
+                if (mark[y]==s || !passable(i,y) || d[y]<0 || (d[x]>=0 && d[x]<=d[y]+1)) continue;
+                d[x]=d[y]+1;
+            }
+            if (d[x]>=0) seeds[ns++]=(long)d[x]<<32 | x;
+        }
+        Arrays.sort(seeds,0,ns);
+
+        // Two queues in distance order: the sorted seeds, and the FIFO of sections they improve.
+        int[] q=fifo;
+        int head=0, tail=0, si=0;
+        while (si<ns || head<tail){
+            int u;
+            if (head==tail || (si<ns && (int)(seeds[si]>>>32)<=d[q[head]])){
+                long e=seeds[si++];
+                u=(int)e;
+                if (d[u]!=(int)(e>>>32)) continue;  // improved since it was seeded
+            } else u=q[head++];
+            if (!open(u)) continue;
+            for (int i=off[u];i<off[u+1];i++){
+                int z=adj[i];
+                if (mark[z]!=s || !linkOpen(i) || (d[z]>=0 && d[z]<=d[u]+1)) continue;
+                d[z]=d[u]+1;
+                q[tail++]=z;
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Engine for a network of loosely coupled corridors that ticks independent regions on
+ * several cores.
+ *
+ * Sections are split into regions, by an operator's cut ({@code regionOf}) or by
+ * {@link #partition}. Each tick files every listed train under the region of its section,
+ * then joins regions for this tick wherever a train could touch another region: its next
+ * hop, the ends of every link its move crosses and, for a train due a detour, every
+ * neighbour. That join is the boundary handoff: a train about to leave its region ticks
+ * together with the region it enters, and the lowest region id of a group owns it. Each
+ * group then runs the ordinary tick (intents, selection, feasibility, commit) on its own
+ * workspace in the pool.
+ *
+ * Intents in different groups share no section and no crossing, so they cannot swap,
+ * compete for a target, cross, chain or add to each other's demand counts. The ordering is
+ * total, so each group picks exactly the winners the single-threaded engine would, and the
+ * results match {@link InterlockingImpl} move for move. Rerouting counts, the gridlock
+ * detector, journal, change feed, snapshots and retention see every group's intents once
+ * all have finished, grouped by region rather than in one global order. Metrics record
+ * tick totals but no phase times.
+ *
+ * As with {@link InterlockingImpl}, calls come from one thread at a time. Lookahead is not
+ * supported.
+ */
+public class ShardedInterlocking extends InterlockingImpl {
+
+    /** region of each section, indexed by section id */
+    private final int[] regionOf;
+    private final int regions;
+    private final ForkJoinPool pool;
+
+    /** regions a move over directed edge e touches: eReg[eOff[e]..eOff[e+1]) */
+    private int[] eOff, eReg;
+
+    // Per-tick grouping scratch, indexed by region.
+    private final int[] up, count;
+    private final Shard[] shards, run;
+    private final Batch batch=new Batch();
+    private int nRun;
+    private int[] rank;
+
+    // Shard and Batch are ForkJoinTasks, hence Serializable, but are never serialised.
+
+    /** One region's share of a tick, run on its own workspace. */
+    @SuppressWarnings("serial")
+    private final class Shard extends RecursiveAction {
+        final Workspace ws;
+        int[] hs=new int[16];
+        int n, moved;
+
+        Shard(){ ws=new Workspace(topo); }
+
+        void ensure(int len){ if (hs.length<len) hs=new int[Math.max(len, hs.length*2)]; }
+
+        void run(){ moved=step(hs,n,ws,rank,null,0); }
+
+        @Override
+        protected void compute(){ run(); }
+    }
+
+    /** Forks every shard but the first, runs that one itself, then joins the rest. */
+    @SuppressWarnings("serial")
+    private final class Batch extends RecursiveAction {
+        @Override
+        protected void compute(){
+            for (int i=1;i<nRun;i++){ run[i].reinitialize(); run[i].fork(); }
+            run[0].run();
+            for (int i=nRun-1;i>0;i--) run[i].join();
+        }
+    }
+
+    /** Splits the topology into {@code regions} regions (see {@link #partition}) and ticks them on the common pool. */
+    public ShardedInterlocking(Topology topo, int regions){
+        this(topo, partition(topo, regions), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param regionOf region of each section, indexed by section id; regions are numbered
+     *                 0..k-1 and may be any shape, though a region whose trains keep
+     *                 meeting another's simply ticks with it
+     */
+    public ShardedInterlocking(Topology topo, int[] regionOf, ForkJoinPool pool){
+        super(topo);
+        if (pool==null) throw new IllegalArgumentException("pool must not be null");
+        if (regionOf==null || regionOf.length<=topo.max) throw new IllegalArgumentException("regionOf must cover every section");
+        int k=0;
+        for (int s=topo.min;s<=topo.max;s++){
+            if (regionOf[s]<0) throw new IllegalArgumentException("negative region for section "+s);
+            k=Math.max(k, regionOf[s]+1);
+        }
+        this.regionOf=regionOf.clone();
+        this.regions=k;
+        this.pool=pool;
+        up=new int[k]; count=new int[k];
+        shards=new Shard[k]; run=new Shard[k];
+        for (int r=0;r<k;r++) shards[r]=new Shard();
+        touched();
+    }
+
+    /** After a crossing is added or removed, the regions each edge touches change with it. */
+    @Override
+    void reconfigure(Runnable change){
+        super.reconfigure(change);
+        touched();
+    }
+
+    private void touched(){
+        // Regions of both ends of every edge and of every edge it crosses, without repeats.
+        int[] off=topo.off, adj=topo.adj, confOff=this.confOff, conf=this.conf;
+        int edges=topo.edges();
+        int[] from=new int[edges];
+        for (int s=topo.min;s<=topo.max;s++) for (int i=off[s];i<off[s+1];i++) from[i]=s;
+        int[] seen=new int[regions], reg=new int[Math.max(16, 2*edges)];
+        eOff=new int[edges+1];
+        int len=0;
+        for (int e=0;e<edges;e++){
+            int mark=e+1;
+            for (int i=confOff[e]-1;i<confOff[e+1];i++){
+                int f=i<confOff[e] ? e : conf[i];
+                for (int r: new int[] {this.regionOf[from[f]], this.regionOf[adj[f]]}){
+                    if (seen[r]==mark) continue;
+                    seen[r]=mark;
+                    if (len==reg.length) reg=Arrays.copyOf(reg, len*2);
+                    reg[len++]=r;
+                }
+            }
+            eOff[e+1]=len;
+        }
+        eReg=Arrays.copyOf(reg, len);
+    }
+
+    /**
+     * A balanced cut into at most k regions: sections in breadth-first order from the
+     * lowest id, each component in turn, split into k runs of equal length. Each region is
+     * then a band of the corridor, so only trains near a band's edge tie two regions.
+     */
+    public static int[] partition(Topology topo, int k){
+        if (k<1) throw new IllegalArgumentException("k must be positive");
+        int n=topo.sections();
+        int[] off=topo.off, adj=topo.adj, regionOf=new int[topo.max+1], order=new int[n];
+        boolean[] seen=new boolean[topo.max+1];
+        int len=0;
+        for (int s=topo.min;s<=topo.max;s++){
+            if (seen[s]) continue;
+            seen[s]=true;
+            order[len++]=s;
+            for (int q=len-1;q<len;q++){
+                int u=order[q];
+                for (int i=off[u];i<off[u+1];i++) if (!seen[adj[i]]){ seen[adj[i]]=true; order[len++]=adj[i]; }
+            }
+        }
+        k=Math.min(k,n);
+        for (int i=0;i<n;i++) regionOf[order[i]]=(int)((long)i*k/n);
+        return regionOf;
+    }
+
+    public int regions(){ return regions; }
+
+    /** Not supported: a plan spans the whole corridor, so it cannot be split across regions. */
+    @Override
+    public void setLookahead(int horizon, long budgetNanos){
+        throw new UnsupportedOperationException("lookahead needs the single-threaded engine");
+    }
+
+    // ----- Tick -----
+
+    @Override
+    int tick(int[] hs, int len, Workspace w, int[] rank, long t0){
+        TickMetrics m=metrics();
+        if (m!=null && t0==0) t0=System.nanoTime();
+        group(hs,len);
+        this.rank=rank;
+        if (nRun>1){ batch.reinitialize(); pool.invoke(batch); }
+        else if (nRun==1) run[0].run();
+        int moved=0;
+        for (int i=0;i<nRun;i++) moved+=run[i].moved;
+        if (m==null && !observed()) return moved;
+
+        w.clear();
+        for (int i=0;i<nRun;i++) w.absorb(run[i].ws);
+        after(w);
+        if (m!=null) m.tick(System.nanoTime()-t0, w.intents, moved, w.inSwap, w.reserved, w.crossing, w.infeasible);
+        return moved;
+    }
+
+    /** Joins the regions this tick's trains tie together and deals each train to its group's shard. */
+    private void group(int[] hs, int len){
+        for (int r=0;r<regions;r++){ up[r]=r; count[r]=0; }
+        int[] off=topo.off;
+        for (int q=0;q<len;q++){
+            int t=hs[q], cur=tCur[t], r=regionOf[cur];
+            // At its destination a train exits or stays; asking the way would build a tree the plain engine never has.
+            int nx=cur==tDest[t] ? -1 : routing.next(cur,tDest[t]);
+            if (nx>=0) join(r, topo.edge(cur,nx));
+            if (patience>0 && tWait[t]>=patience) for (int e=off[cur];e<off[cur+1];e++) join(r,e);
+        }
+        for (int q=0;q<len;q++) count[find(regionOf[tCur[hs[q]]])]++;
+        nRun=0;
+        for (int r=0;r<regions;r++){
+            if (count[r]==0) continue;
+            Shard s=shards[r];
+            s.ensure(count[r]);
+            s.n=0;
+            run[nRun++]=s;
+        }
+        for (int q=0;q<len;q++){
+            Shard s=shards[find(regionOf[tCur[hs[q]]])];
+            s.hs[s.n++]=hs[q];
+        }
+    }
+
+    private void join(int r, int e){
+        for (int i=eOff[e];i<eOff[e+1];i++){
+            int a=find(r), b=find(eReg[i]);
+            if (a<b) up[b]=a; else if (b<a) up[a]=b;
+        }
+    }
+
+    private int find(int r){
+        while (up[r]!=r){ up[r]=up[up[r]]; r=up[r]; }
+        return r;
+    }
+}
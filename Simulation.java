@@ -0,0 +1,31 @@
+/**
+ * Outcome of a batch of ticks run by {@link InterlockingImpl#simulate}: how many trains
+ * moved on each tick and where every train ended up.
+ */
+public final class Simulation {
+
+    private final int[] moved;          // per tick
+    private final int[] positions;      // per handle; -1 once out of the corridor
+
+    Simulation(int[] moved, int[] positions){ this.moved=moved; this.positions=positions; }
+
+    public int ticks(){ return moved.length; }
+
+    /** Trains that moved (exits included) on tick {@code t}, counting from 0. */
+    public int moved(int t){ return moved[t]; }
+
+    public long totalMoved(){
+        long n=0;
+        for (int m: moved) n+=m;
+        return n;
+    }
+
+    /** Number of train handles covered; handles are 0..trains()-1. */
+    public int trains(){ return positions.length; }
+
+    /** Section train {@code h} occupied after the last tick, or -1 if it had left. */
+    public int position(int h){
+        if (h<0 || h>=positions.length) throw new IllegalArgumentException("no such train handle: "+h);
+        return positions[h];
+    }
+}
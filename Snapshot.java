@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * Immutable whole-corridor view published by the engine at the end of every tick.
+ *
+ * Occupancy (section → train handle), positions (handle → section) and train names
+ * are kept in fixed-size chunks. A new snapshot shares every chunk the tick did not touch with the
+ * one before it and copies only the chunks that changed, so publishing costs the size
+ * of the change, not of the corridor. Once published a snapshot never changes: every
+ * read below sees the same tick, with no locking.
+ */
+public final class Snapshot {
+
+    static final int SHIFT=8, CHUNK=1<<SHIFT, MASK=CHUNK-1;
+
+    private final long tick;
+    private final int min, max, trains;
+    private final int[][] occ;          // occ[s>>SHIFT][s&MASK], section ids from 0
+    private final int[][] pos;          // pos[h>>SHIFT][h&MASK]
+    private final String[][] names;     // names[h>>SHIFT][h&MASK]; copied too, since handles are reissued
+
+    // chunks this snapshot copied and may still write; null once published
+    private boolean[] ownOcc, ownPos, ownNames;
+
+    private Snapshot(long tick, int min, int max, int trains, int[][] occ, int[][] pos, String[][] names){
+        this.tick=tick; this.min=min; this.max=max; this.trains=trains;
+        this.occ=occ; this.pos=pos; this.names=names;
+    }
+
+    /** Full copy of the given state; used when publishing starts. */
+    static Snapshot of(long tick, int min, int max, int[] occLive, int trains, int[] curLive, String[] names){
+        int[][] o=new int[(max>>SHIFT)+1][];
+        for (int c=0;c<o.length;c++){
+            int lo=c<<SHIFT;
+            o[c]=Arrays.copyOfRange(occLive, lo, lo+CHUNK);      // pads past max with 0s, never read
+        }
+        int chunks=Math.max(1,(trains+MASK)>>SHIFT);
+        int[][] p=new int[chunks][];
+        String[][] n=new String[chunks][];
+        for (int c=0;c<chunks;c++){
+            int lo=c<<SHIFT, len=Math.max(0, Math.min(CHUNK, trains-lo));
+            p[c]=new int[CHUNK];
+            n[c]=new String[CHUNK];
+            System.arraycopy(curLive, lo, p[c], 0, len);
+            System.arraycopy(names, lo, n[c], 0, len);
+        }
+        return new Snapshot(tick, min, max, trains, o, p, n);
+    }
+
+    /** Successor sharing all chunks with this one; fill it with put*, then publish it. */
+    Snapshot next(long tick, int trains){
+        int chunks=Math.max(pos.length, (trains+MASK)>>SHIFT);
+        Snapshot s=new Snapshot(tick, min, max, trains, occ.clone(), Arrays.copyOf(pos, chunks), Arrays.copyOf(names, chunks));
+        s.ownOcc=new boolean[occ.length];
+        s.ownPos=new boolean[chunks];
+        s.ownNames=new boolean[chunks];
+        for (int c=pos.length;c<chunks;c++){
+            s.pos[c]=new int[CHUNK]; s.ownPos[c]=true;
+            s.names[c]=new String[CHUNK]; s.ownNames[c]=true;
+        }
+        return s;
+    }
+
+    void putSection(int s, int h){
+        int c=s>>SHIFT;
+        if (!ownOcc[c]){ occ[c]=occ[c].clone(); ownOcc[c]=true; }
+        occ[c][s&MASK]=h;
+    }
+
+    void putTrain(int h, int s){
+        int c=h>>SHIFT;
+        if (!ownPos[c]){ pos[c]=pos[c].clone(); ownPos[c]=true; }
+        pos[c][h&MASK]=s;
+    }
+
+    void putName(int h, String name){
+        int c=h>>SHIFT;
+        if (!ownNames[c]){ names[c]=names[c].clone(); ownNames[c]=true; }
+        names[c][h&MASK]=name;
+    }
+
+    /** Drops the build-time bookkeeping; call just before publishing. */
+    Snapshot freeze(){ ownOcc=null; ownPos=null; ownNames=null; return this; }
+
+    // ----- Queries -----
+
+    /** Number of ticks the engine had completed when this snapshot was taken. */
+    public long tick(){ return tick; }
+
+    /** Number of train handles issued so far; handles are 0..trains()-1. */
+    public int trains(){ return trains; }
+
+    /** Handle of the train in a section, or -1 if it is empty. */
+    public int getSectionHandle(int s){
+        if (s<min || s>max) throw new IllegalArgumentException("track section must be "+min+".."+max);
+        return occ[s>>SHIFT][s&MASK];
+    }
+
+    /** Name of the train in a section, or null if it is empty. */
+    public String getSection(int s){
+        int h=getSectionHandle(s);
+        return h<0 ? null : names[h>>SHIFT][h&MASK];
+    }
+
+    /** Section a train occupies, or -1 if it has left the corridor. */
+    public int getTrain(int h){
+        if (h<0 || h>=trains) throw new IllegalArgumentException("no such train handle: "+h);
+        return pos[h>>SHIFT][h&MASK];
+    }
+
+    public String trainName(int h){
+        if (h<0 || h>=trains) throw new IllegalArgumentException("no such train handle: "+h);
+        return names[h>>SHIFT][h&MASK];
+    }
+}
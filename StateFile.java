@@ -0,0 +1,173 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary image of an engine's train state, written by {@link InterlockingImpl#snapshot(WritableByteChannel)}.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   magic "ILS1", version, topology fingerprint, journal offset, train count n
+ *   cur[n] dest[n] lastFrom[n] class[n]   int columns
+ *   reached                          n bits, packed
+ *   names                            n x (u16 length, UTF-8 bytes)
+ *   crc32c of everything above
+ * </pre>
+ * Occupancy is not stored; it is rebuilt from the positions. The columns are streamed
+ * through one reusable buffer, so writing and reading cost one pass over the arrays.
+ */
+final class StateFile {
+
+    static final int MAGIC=0x31534C49;          // "ILS1" read little-endian
+    static final int VERSION=2;
+
+    private static final int BUF=1<<16;
+
+    private StateFile(){}
+
+    static void write(InterlockingImpl il, WritableByteChannel out, long journalPos) throws IOException {
+        Out o=new Out(out);
+        int n=il.nTrains;
+        o.need(32).putInt(MAGIC).putInt(VERSION).putLong(il.topo.fingerprint()).putLong(journalPos).putInt(n).putInt(0);
+        o.ints(il.tCur,n); o.ints(il.tDest,n); o.ints(il.tLastFrom,n); o.ints(il.tClass,n);
+        boolean[] r=il.tReached;
+        for (int i=0;i<n;i+=8){
+            int bits=0;
+            for (int k=0;k<8 && i+k<n;k++) if (r[i+k]) bits|=1<<k;
+            o.need(1).put((byte)bits);
+        }
+        for (int h=0;h<n;h++){
+            byte[] nm=il.tName[h].getBytes(StandardCharsets.UTF_8);
+            if (nm.length>0xFFFF) throw new IOException("train name too long: "+il.tName[h]);
+            o.need(2).putShort((short)nm.length);
+            for (int p=0;p<nm.length;){
+                int k=Math.min(nm.length-p, BUF);
+                o.need(k).put(nm,p,k);
+                p+=k;
+            }
+        }
+        o.finish();
+    }
+
+    /** Reads an image into the empty engine {@code il}; returns the journal offset it recorded. */
+    static long read(InterlockingImpl il, ReadableByteChannel in) throws IOException {
+        In r=new In(in);
+        ByteBuffer b=r.need(32);
+        if (b.getInt()!=MAGIC) throw new IOException("state: bad magic");
+        int v=b.getInt();
+        if (v!=VERSION) throw new IOException("state: unsupported version "+v);
+        if (b.getLong()!=il.topo.fingerprint()) throw new IOException("state: written for a different topology");
+        long journalPos=b.getLong();
+        int n=b.getInt();
+        b.getInt();
+        if (n<0) throw new IOException("state: bad train count "+n);
+
+        int[] cur=r.ints(n), dest=r.ints(n), last=r.ints(n), cls=r.ints(n);
+        boolean[] reached=new boolean[n];
+        for (int i=0;i<n;i+=8){
+            int bits=r.need(1).get();
+            for (int k=0;k<8 && i+k<n;k++) reached[i+k]=(bits>>>k & 1)!=0;
+        }
+        String[] names=new String[n];
+        byte[] tmp=new byte[64];
+        for (int h=0;h<n;h++){
+            int len=r.need(2).getShort() & 0xFFFF;
+            if (tmp.length<len) tmp=new byte[Math.max(len, tmp.length*2)];
+            for (int p=0;p<len;){
+                int k=Math.min(len-p, BUF);
+                r.need(k).get(tmp,p,k);
+                p+=k;
+            }
+            names[h]=new String(tmp,0,len,StandardCharsets.UTF_8);
+        }
+        r.verify();
+        il.load(n, names, cur, dest, last, reached, cls);
+        return journalPos;
+    }
+
+    // Buffered writer that checksums every byte on its way out.
+    private static final class Out {
+        final WritableByteChannel ch;
+        final ByteBuffer buf=ByteBuffer.allocateDirect(BUF).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32C crc=new CRC32C();
+
+        Out(WritableByteChannel ch){ this.ch=ch; }
+
+        ByteBuffer need(int k) throws IOException {
+            if (buf.remaining()<k) flush();
+            return buf;
+        }
+
+        void ints(int[] a, int n) throws IOException {
+            for (int i=0;i<n;){
+                int k=Math.min(n-i, BUF/4);
+                need(4*k).asIntBuffer().put(a,i,k);
+                buf.position(buf.position()+4*k);
+                i+=k;
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        void finish() throws IOException {
+            flush();
+            buf.putInt((int)crc.getValue()).flip();
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+
+    // Buffered reader that checksums every byte it hands out.
+    private static final class In {
+        final ReadableByteChannel ch;
+        final ByteBuffer buf=ByteBuffer.allocateDirect(BUF).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32C crc=new CRC32C();
+        int mark;                       // bytes of buf already checksummed
+
+        In(ReadableByteChannel ch){ this.ch=ch; buf.limit(0); }
+
+        ByteBuffer need(int k) throws IOException {
+            if (buf.remaining()<k){
+                sum();
+                buf.compact();
+                while (buf.position()<k) if (ch.read(buf)<0) throw new EOFException("state: truncated");
+                buf.flip();
+                mark=0;
+            }
+            return buf;
+        }
+
+        private void sum(){
+            ByteBuffer d=buf.duplicate();
+            d.limit(buf.position()).position(mark);
+            crc.update(d);
+            mark=buf.position();
+        }
+
+        int[] ints(int n) throws IOException {
+            int[] a=new int[n];
+            for (int i=0;i<n;){
+                int k=Math.min(n-i, BUF/4);
+                need(4*k).asIntBuffer().get(a,i,k);
+                buf.position(buf.position()+4*k);
+                i+=k;
+            }
+            return a;
+        }
+
+        void verify() throws IOException {
+            sum();
+            int expect=(int)crc.getValue();
+            if (need(4).getInt()!=expect) throw new IOException("state: checksum mismatch");
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Optional counters and per-phase latency histograms for the movement engine.
+ *
+ * Attach one with {@link InterlockingImpl#setMetrics}; with none attached the tick only
+ * pays a null check per phase. Every counter is a {@link LongAdder}, so dispatcher
+ * threads of the concurrent engine record without contending. Read it by pulling the
+ * getters, or register it as an MXBean ({@link #register}).
+ *
+ * Rejections count intents that lost, by the first reason that stopped them:
+ * half of a head-on swap, a target already reserved by a higher-ranked intent, a
+ * crossing with a claimed edge, or a winner whose chain could not move.
+ */
+public final class TickMetrics implements TickMetricsMXBean {
+
+    // Phases, in tick order.
+    public static final int VALIDATE=0, INTENTS=1, SWAP=2, SORT=3, SELECT=4, FEASIBLE=5, COMMIT=6;
+    static final String[] PHASES={"validate","intents","swap","sort","select","feasible","commit"};
+
+    // Rejection reasons.
+    public static final int IN_SWAP=0, RESERVED=1, CROSSING=2, INFEASIBLE=3;
+    static final String[] REASONS={"inSwap","reserved","crossing","infeasible"};
+
+    private final LongAdder ticks=new LongAdder(), intents=new LongAdder(), moves=new LongAdder();
+    private final LongAdder[] rejected=new LongAdder[REASONS.length];
+    private final Histogram[] phases=new Histogram[PHASES.length];
+    private final Histogram total=new Histogram();
+
+    public TickMetrics(){
+        for (int i=0;i<rejected.length;i++) rejected[i]=new LongAdder();
+        for (int i=0;i<phases.length;i++) phases[i]=new Histogram();
+    }
+
+    // ----- Recording (engine side) -----
+
+    /** Records the phase that ran since {@code start}; returns now, the next phase's start. */
+    long lap(int phase, long start){
+        long now=System.nanoTime();
+        phases[phase].record(now-start);
+        return now;
+    }
+
+    void tick(long nanos, int intents, int moved, int inSwap, int reserved, int crossing, int infeasible){
+        ticks.increment();
+        total.record(nanos);
+        if (intents>0) this.intents.add(intents);
+        if (moved>0) moves.add(moved);
+        if (inSwap>0) rejected[IN_SWAP].add(inSwap);
+        if (reserved>0) rejected[RESERVED].add(reserved);
+        if (crossing>0) rejected[CROSSING].add(crossing);
+        if (infeasible>0) rejected[INFEASIBLE].add(infeasible);
+    }
+
+    // ----- Pull API -----
+
+    public long ticks(){ return ticks.sum(); }
+    public long intents(){ return intents.sum(); }
+    public long moves(){ return moves.sum(); }
+    public long rejected(int reason){ return rejected[reason].sum(); }
+
+    /** Latency of one phase (see the phase constants), in nanoseconds. */
+    public Histogram phase(int phase){ return phases[phase]; }
+
+    /** Latency of whole ticks, validation included, in nanoseconds. */
+    public Histogram tickLatency(){ return total; }
+
+    public void reset(){
+        ticks.reset(); intents.reset(); moves.reset();
+        for (LongAdder a: rejected) a.reset();
+        for (Histogram h: phases) h.reset();
+        total.reset();
+    }
+
+    /** Registers this object with the platform MBean server under {@code name}. */
+    public TickMetrics register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        return this;
+    }
+
+    // ----- MXBean -----
+
+    @Override public long getTicks(){ return ticks(); }
+    @Override public long getIntents(){ return intents(); }
+    @Override public long getMoves(){ return moves(); }
+    @Override public long getRejectedInSwap(){ return rejected(IN_SWAP); }
+    @Override public long getRejectedReserved(){ return rejected(RESERVED); }
+    @Override public long getRejectedCrossing(){ return rejected(CROSSING); }
+    @Override public long getRejectedInfeasible(){ return rejected(INFEASIBLE); }
+    @Override public String[] getPhases(){ return PHASES.clone(); }
+    @Override public long[] getPhaseP50Nanos(){ return percentiles(0.50); }
+    @Override public long[] getPhaseP99Nanos(){ return percentiles(0.99); }
+    @Override public long[] getPhaseMaxNanos(){
+        long[] r=new long[phases.length];
+        for (int i=0;i<r.length;i++) r[i]=phases[i].max();
+        return r;
+    }
+    @Override public long getTickP50Nanos(){ return total.percentile(0.50); }
+    @Override public long getTickP99Nanos(){ return total.percentile(0.99); }
+
+    private long[] percentiles(double p){
+        long[] r=new long[phases.length];
+        for (int i=0;i<r.length;i++) r[i]=phases[i].percentile(p);
+        return r;
+    }
+
+    /**
+     * Log-linear histogram of non-negative values, HDR style: values below 8 get a bucket
+     * each, and every power-of-two range above that is split into 8 equal buckets, so a
+     * reported value is within 12.5% of the true one.
+     */
+    public static final class Histogram {
+
+        private static final int SUB=3, SUBS=1<<SUB;
+        private static final int BUCKETS=(64-SUB+1)*SUBS;
+
+        private final LongAdder[] counts=new LongAdder[BUCKETS];
+        private final LongAccumulator max=new LongAccumulator(Math::max, 0);
+
+        Histogram(){ for (int i=0;i<BUCKETS;i++) counts[i]=new LongAdder(); }
+
+        static int bucket(long v){
+            if (v<SUBS) return (int)Math.max(v,0);
+            int e=63-Long.numberOfLeadingZeros(v);             // v in [2^e, 2^(e+1))
+            return (e-SUB+1)*SUBS + (int)((v>>>(e-SUB)) & (SUBS-1));
+        }
+
+        /** Largest value that falls in bucket b. */
+        static long upper(int b){
+            if (b<SUBS) return b;
+            int e=b/SUBS+SUB-1, sub=b%SUBS;
+            return ((long)(SUBS+sub+1)<<(e-SUB))-1;
+        }
+
+        void record(long v){
+            counts[bucket(v)].increment();
+            max.accumulate(v);
+        }
+
+        public long count(){
+            long n=0;
+            for (LongAdder c: counts) n+=c.sum();
+            return n;
+        }
+
+        public long max(){ return max.get(); }
+
+        /** Upper bound of the bucket holding the p-th quantile (0 &lt; p &le; 1), or 0 when empty. */
+        public long percentile(double p){
+            long[] c=new long[BUCKETS];
+            long n=0;
+            for (int i=0;i<BUCKETS;i++) n+=c[i]=counts[i].sum();
+            if (n==0) return 0;
+            long rank=Math.max(1, (long)Math.ceil(p*n)), seen=0;
+            for (int i=0;i<BUCKETS;i++) if ((seen+=c[i])>=rank) return Math.min(upper(i), max());
+            return max();
+        }
+
+        void reset(){
+            for (LongAdder c: counts) c.reset();
+            max.reset();
+        }
+    }
+}
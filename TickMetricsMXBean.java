@@ -0,0 +1,25 @@
+/**
+ * JMX view of {@link TickMetrics}. Latencies are nanoseconds; the per-phase arrays are
+ * indexed like {@link #getPhases()}.
+ */
+public interface TickMetricsMXBean
+{
+    long getTicks();
+    long getIntents();
+    long getMoves();
+
+    long getRejectedInSwap();
+    long getRejectedReserved();
+    long getRejectedCrossing();
+    long getRejectedInfeasible();
+
+    String[] getPhases();
+    long[] getPhaseP50Nanos();
+    long[] getPhaseP99Nanos();
+    long[] getPhaseMaxNanos();
+
+    long getTickP50Nanos();
+    long getTickP99Nanos();
+
+    void reset();
+}
@@ -0,0 +1,113 @@
+/**
+ * Bounded record of recently exited trains: enough to keep answering
+ * {@code getTrain(name) == -1} for them after their handle has been reclaimed.
+ *
+ * Each entry is a 64-bit hash of the train name plus the engine tick it exited on, kept
+ * in primitive arrays: a FIFO ring in exit order and an open-addressed index over it.
+ * Nothing is allocated per entry, so memory stays fixed at about 24 bytes times
+ * {@code maxCount}. The oldest entry is dropped when the ring is full, and entries
+ * older than {@code maxAge} ticks read as gone. Two names sharing a 64-bit hash would
+ * make an unknown name look like a recent exit; at these sizes the odds are negligible.
+ *
+ * All methods are synchronized; exits are rare next to moves, so this lock is cold.
+ */
+final class Tombstones {
+
+    private final int maxCount;
+    private final long maxAge;
+
+    private final long[] ringKey, ringTick;     // FIFO of entries, oldest at head
+    private int head, size;
+
+    private final long[] keys;                  // open addressing; 0 marks an empty slot
+    private final int[] slot;                   // ring index of each key
+    private final int mask;
+
+    private long tick;                          // engine ticks seen so far
+
+    Tombstones(int maxCount, long maxAge){
+        if (maxCount<1) throw new IllegalArgumentException("maxCount must be positive");
+        if (maxAge<1) throw new IllegalArgumentException("maxAge must be positive");
+        this.maxCount=maxCount; this.maxAge=maxAge;
+        ringKey=new long[maxCount]; ringTick=new long[maxCount];
+        int cap=Integer.highestOneBit(Math.max(2, maxCount)*2-1)<<1;
+        keys=new long[cap]; slot=new int[cap]; mask=cap-1;
+    }
+
+    synchronized void tick(){ tick++; }
+
+    synchronized long ticks(){ return tick; }
+
+    synchronized int size(){ expire(); return size; }
+
+    /** Records that {@code name} exited now. */
+    synchronized void add(String name){
+        expire();
+        if (size==maxCount) removeHead();
+        long k=key(name);
+        int r=(head+size)%maxCount;
+        ringKey[r]=k; ringTick[r]=tick;
+        size++;
+        int i=find(k);
+        if (keys[i]!=0) remove(i);              // a hash clash: the newer exit wins
+        i=find(k);
+        keys[i]=k; slot[i]=r;
+    }
+
+    /** Whether {@code name} exited within the retention window. */
+    synchronized boolean contains(String name){
+        expire();
+        return keys[find(key(name))]!=0;
+    }
+
+    /** Forgets {@code name} early (its name is being given to a new train). */
+    synchronized void forget(String name){
+        int i=find(key(name));
+        if (keys[i]==0) return;
+        ringKey[slot[i]]=0;                     // the ring entry ages out as a no-op
+        remove(i);
+    }
+
+    private void expire(){
+        while (size>0 && tick-ringTick[head]>maxAge) removeHead();
+    }
+
+    private void removeHead(){
+        long k=ringKey[head];
+        if (k!=0){
+            int i=find(k);
+            if (keys[i]!=0 && slot[i]==head) remove(i);
+        }
+        head=(head+1)%maxCount;
+        size--;
+    }
+
+    /** Slot holding k, or the empty slot where it would go. */
+    private int find(long k){
+        int i=(int)(k ^ k>>>32) & mask;
+        while (keys[i]!=0 && keys[i]!=k) i=(i+1)&mask;
+        return i;
+    }
+
+    /** Linear-probing delete with backward shift, so no tombstone markers are needed here. */
+    private void remove(int i){
+        int j=i;
+        while (true){
+            j=(j+1)&mask;
+            if (keys[j]==0) break;
+            int home=(int)(keys[j] ^ keys[j]>>>32) & mask;
+            // move j back into the hole at i unless its home lies cyclically in (i, j]
+            if (i<=j ? (home<=i || home>j) : (home<=i && home>j)){
+                keys[i]=keys[j]; slot[i]=slot[j]; i=j;
+            }
+        }
+        keys[i]=0;
+    }
+
+    /** 64-bit FNV-1a over the name's chars, never 0. */
+    static long key(String name){
+        long h=0xCBF29CE484222325L;
+        for (int i=0, n=name.length(); i<n; i++){ h^=name.charAt(i); h*=0x100000001B3L; }
+        return h!=0 ? h : 1;
+    }
+}
@@ -0,0 +1,405 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Immutable corridor topology: sections, undirected links, exits, crossing pairs and the
+ * compiled move-ordering {@link Policy}.
+ *
+ * Sections are the contiguous id range {@code min..max}. Adjacency is stored in
+ * compressed-sparse-row form: the neighbours of {@code s} are
+ * {@code adj[off[s]] .. adj[off[s+1]-1]}, sorted ascending, so walking the graph
+ * never touches a boxed {@code Integer}.
+ *
+ * Text format (one directive per line, {@code #} starts a comment):
+ * <pre>
+ *   sections 1 11        id range, inclusive
+ *   link 1 5             undirected link (1 step per tick)
+ *   exit 2 3 4 8         exit sections
+ *   cross 1 5 7 4        link 1-5 crosses link 7-4 (all four directions conflict)
+ *   group 1 5 7 4 2 6    every listed link crosses every other one
+ *   classes pass freight train classes; the first is the default (else just "default")
+ *   priority 2 1 5 2 6   priority 2 for links 1-5 and 2-6, both directions, every class
+ *   priority freight 0 7 4   ...for one class only; later lines override earlier ones
+ * </pre>
+ * Moves without a priority line get priority 1.
+ *
+ * Directed edges are numbered densely by their slot in {@code adj}, and each edge's
+ * crossing conflicts are kept as a sorted id list in the same CSR shape
+ * ({@code conf[confOff[e]] .. conf[confOff[e+1]-1]}).
+ */
+public final class Topology {
+
+    final int min, max;
+    final int[] off;            // length max+2; off[s]..off[s+1] indexes adj
+    final int[] adj;            // neighbour ids, sorted per section
+    private final long[] exits; // bitset over section ids
+    final int[] cross;          // flattened (a,b,c,d) quadruples: link a-b crosses link c-d
+    final int[] confOff;        // length edges()+1; confOff[e]..confOff[e+1] indexes conf
+    final int[] conf;           // edge ids each directed edge crosses, sorted per edge
+    private final String[] classes;     // train class names
+    final int[] prio;           // prio[cls*edges()+e] = priority of edge e for class cls
+
+    private Topology(int min, int max, int[] off, int[] adj, long[] exits, int[] cross, String[] classes, int[] prio){
+        this.min=min; this.max=max; this.off=off; this.adj=adj; this.exits=exits; this.cross=cross;
+        this.classes=classes; this.prio=prio;
+        int[][] c=conflicts(cross);
+        this.confOff=c[0]; this.conf=c[1];
+    }
+
+    /**
+     * Compiles crossing quadruples into the per-edge conflict CSR, {confOff, conf}. Engines
+     * whose crossings change at runtime keep their own compiled copy.
+     */
+    int[][] conflicts(int[] cross){
+        for (int i=0;i<cross.length;i+=4){
+            if (!linked(cross[i],cross[i+1]) || !linked(cross[i+2],cross[i+3]))
+                throw new IllegalArgumentException("crossing "+cross[i]+"-"+cross[i+1]+" / "
+                        +cross[i+2]+"-"+cross[i+3]+" names a missing link");
+        }
+        // every crossing makes all four directed pairs conflict, recorded on both edges
+        int[] pairs=new int[cross.length*2];
+        int np=0;
+        for (int i=0;i<cross.length;i+=4){
+            int ab=edge(cross[i],cross[i+1]), ba=edge(cross[i+1],cross[i]);
+            int cd=edge(cross[i+2],cross[i+3]), dc=edge(cross[i+3],cross[i+2]);
+            pairs[np++]=ab; pairs[np++]=cd;  pairs[np++]=ab; pairs[np++]=dc;
+            pairs[np++]=ba; pairs[np++]=cd;  pairs[np++]=ba; pairs[np++]=dc;
+        }
+        int[] co=new int[adj.length+1];
+        for (int i=0;i<np;i++) co[pairs[i]+1]++;
+        for (int e=0;e<adj.length;e++) co[e+1]+=co[e];
+        int[] c=new int[np], fill=Arrays.copyOf(co, adj.length);
+        for (int i=0;i<np;i+=2){
+            c[fill[pairs[i]]++]=pairs[i+1];
+            c[fill[pairs[i+1]]++]=pairs[i];
+        }
+        int w=0;
+        for (int e=0;e<adj.length;e++){
+            int lo=co[e], hi=co[e+1];
+            Arrays.sort(c, lo, hi);
+            co[e]=w;
+            for (int i=lo;i<hi;i++) if (i==lo || c[i]!=c[i-1]) c[w++]=c[i];
+        }
+        co[adj.length]=w;
+        return new int[][] {co, Arrays.copyOf(c, w)};
+    }
+
+    // ----- Queries -----
+
+    public int min(){ return min; }
+    public int max(){ return max; }
+    public int sections(){ return max-min+1; }
+    public int links(){ return adj.length/2; }
+
+    public boolean contains(int s){ return s>=min && s<=max; }
+
+    public boolean isExit(int s){ return contains(s) && (exits[s>>>6] & (1L<<s))!=0; }
+
+    public int degree(int s){ return off[s+1]-off[s]; }
+
+    /** i-th neighbour of s in ascending id order. */
+    public int neighbour(int s, int i){ return adj[off[s]+i]; }
+
+    public boolean linked(int a, int b){ return edge(a,b)>=0; }
+
+    /** Number of directed edges; ids run 0..edges()-1. */
+    public int edges(){ return adj.length; }
+
+    /** Dense id of the directed edge a→b (its slot in adj), or -1 if a and b are not linked. */
+    public int edge(int a, int b){
+        if (!contains(a) || !contains(b)) return -1;
+        int i=Arrays.binarySearch(adj, off[a], off[a+1], b);
+        return i>=0 ? i : -1;
+    }
+
+    /** Number of train classes; ids run 0..classes()-1. */
+    public int classes(){ return classes.length; }
+
+    public String className(int cls){ return classes[cls]; }
+
+    /** Id of the train class called {@code name}. */
+    public int trainClass(String name){
+        for (int c=0;c<classes.length;c++) if (classes[c].equals(name)) return c;
+        throw new IllegalArgumentException("no such train class: "+name);
+    }
+
+    /** The compiled policy: a view over the per-class edge tables. */
+    public Policy policy(){
+        String[] names=classes.clone();
+        return new Policy(){
+            @Override public String[] classes(){ return names.clone(); }
+            @Override public int priority(int cls, int from, int to){ return priority(cls, edge(from,to)); }
+            private int priority(int cls, int e){
+                if (cls<0 || cls>=names.length || e<0) throw new IllegalArgumentException("no such move");
+                return prio[cls*adj.length+e];
+            }
+        };
+    }
+
+    /** Whether directed edges ea and eb geometrically cross. */
+    public boolean crosses(int ea, int eb){
+        return ea>=0 && eb>=0 && Arrays.binarySearch(conf, confOff[ea], confOff[ea+1], eb)>=0;
+    }
+
+    /**
+     * 64-bit hash of the id range, links, exits and crossing conflicts. Topologies that
+     * behave the same hash the same however they were declared; journals and snapshots
+     * record it so state is never loaded onto a different track layout.
+     */
+    public long fingerprint(){
+        long h=mix(0x9E3779B97F4A7C15L, min);
+        h=mix(h,max);
+        for (int v: off) h=mix(h,v);
+        for (int v: adj) h=mix(h,v);
+        for (long v: exits) h=mix(h,v);
+        for (int v: confOff) h=mix(h,v);
+        for (int v: conf) h=mix(h,v);
+        for (int v: prio) h=mix(h,v);
+        return h;
+    }
+
+    private static long mix(long h, long v){
+        h=(h^v)*0xBF58476D1CE4E5B9L;
+        return h^(h>>>31);
+    }
+
+    // ----- Stock corridor -----
+
+    private static final Topology CORRIDOR = corridorBuilder().build();
+
+    /** The 11-section corridor from the assignment brief. */
+    public static Topology corridor(){ return CORRIDOR; }
+
+    private static Builder corridorBuilder(){
+        Builder b=new Builder(1,11);
+        b.classes("passenger","freight");
+        // Passenger (purple)
+        b.link(1,5); b.link(5,9); b.link(9,8);        // west vertical
+        b.link(2,6); b.link(6,10);                     // east vertical
+        b.link(6,9);                                   // internal turnout
+
+        // Freight + workshops (yellow)
+        b.link(3,7); b.link(7,11);
+        b.link(7,4);                                   // north split
+        b.link(4,5);                                   // REQUIRED: lets 1→5→4 and 4→5→9
+
+        // stated exits used by the tests/brief
+        for (int s: new int[]{2,3,4,8,9,11}) b.exit(s);
+
+        // North crossover: serialize freight diagonal (7↔4) against passenger verticals (1↔5, 2↔6).
+        b.cross(1,5,7,4); b.cross(2,6,7,4);
+
+        // At the crossover the passenger verticals go first and the freight diagonal last.
+        b.priority(2,1,5); b.priority(2,2,6);
+        b.priority(0,7,4);
+        return b;
+    }
+
+    // ----- Loading -----
+
+    public static Topology load(Path file) throws IOException {
+        try (Reader r=Files.newBufferedReader(file, StandardCharsets.UTF_8)){ return parse(r); }
+    }
+
+    /** Parses the text format described on the class; errors carry the offending line number. */
+    public static Topology parse(Reader in) throws IOException {
+        BufferedReader r = in instanceof BufferedReader ? (BufferedReader)in : new BufferedReader(in);
+        Builder b=null;
+        String line; int no=0;
+        while ((line=r.readLine())!=null){
+            no++;
+            int hash=line.indexOf('#');
+            if (hash>=0) line=line.substring(0,hash);
+            StringTokenizer tok=new StringTokenizer(line);
+            if (!tok.hasMoreTokens()) continue;
+            String cmd=tok.nextToken();
+            try {
+                if (cmd.equals("sections")){
+                    if (b!=null) throw new IllegalArgumentException("sections declared twice");
+                    b=new Builder(num(tok), num(tok));
+                } else {
+                    if (b==null) throw new IllegalArgumentException("'sections' must come first");
+                    switch (cmd){
+                        case "link":  b.link(num(tok), num(tok)); break;
+                        case "exit":  do b.exit(num(tok)); while (tok.hasMoreTokens()); break;
+                        case "cross": b.cross(num(tok), num(tok), num(tok), num(tok)); break;
+                        case "group": b.group(nums(tok)); break;
+                        case "classes": {
+                            List<String> names=new ArrayList<>();
+                            while (tok.hasMoreTokens()) names.add(tok.nextToken());
+                            b.classes(names.toArray(new String[0]));
+                            break;
+                        }
+                        case "priority": {
+                            String first=tok.hasMoreTokens() ? tok.nextToken() : "";
+                            String cls=null;
+                            int p;
+                            if (first.matches("-?\\d+")) p=Integer.parseInt(first);
+                            else { cls=first; p=num(tok); }
+                            int[] ends=nums(tok);
+                            if (ends.length==0 || ends.length%2!=0) throw new IllegalArgumentException("priority needs link pairs");
+                            for (int i=0;i<ends.length;i+=2){
+                                if (cls==null) b.priority(p, ends[i], ends[i+1]);
+                                else b.priority(cls, p, ends[i], ends[i+1]);
+                            }
+                            break;
+                        }
+                        default: throw new IllegalArgumentException("unknown directive '"+cmd+"'");
+                    }
+                }
+                if (tok.hasMoreTokens()) throw new IllegalArgumentException("trailing tokens");
+            } catch (IllegalArgumentException | NoSuchElementException e){
+                throw new IllegalArgumentException("topology line "+no+": "+e.getMessage(), e);
+            }
+        }
+        if (b==null) throw new IllegalArgumentException("topology declares no sections");
+        return b.build();
+    }
+
+    private static int num(StringTokenizer tok){
+        if (!tok.hasMoreTokens()) throw new IllegalArgumentException("missing number");
+        return Integer.parseInt(tok.nextToken());
+    }
+
+    private static int[] nums(StringTokenizer tok){
+        int[] v=new int[tok.countTokens()];
+        for (int i=0;i<v.length;i++) v[i]=num(tok);
+        return v;
+    }
+
+    // ----- Builder -----
+
+    /** Accumulates links in flat int arrays, then packs them into CSR in {@link #build()}. */
+    public static final class Builder {
+        private final int min, max;
+        private int[] ends=new int[16];    // (a,b) pairs
+        private int nEnds=0;
+        private final long[] exits;
+        private int[] cross=new int[8];
+        private int nCross=0;
+        private String[] classes={"default"};
+        private int[] rules=new int[16];   // (class or -1 for all, priority, a, b) quadruples
+        private int nRules=0;
+        private Policy policy;             // replaces the rules when set
+
+        public Builder(int min, int max){
+            if (min<0 || max<min) throw new IllegalArgumentException("bad section range "+min+".."+max);
+            this.min=min; this.max=max;
+            exits=new long[(max>>>6)+1];
+        }
+
+        private void check(int s){
+            if (s<min || s>max) throw new IllegalArgumentException("section "+s+" outside "+min+".."+max);
+        }
+
+        public Builder link(int a, int b){
+            check(a); check(b);
+            if (a==b) throw new IllegalArgumentException("self link on "+a);
+            if (nEnds+2>ends.length) ends=Arrays.copyOf(ends, ends.length*2);
+            ends[nEnds++]=a; ends[nEnds++]=b;
+            return this;
+        }
+
+        public Builder exit(int s){ check(s); exits[s>>>6]|=1L<<s; return this; }
+
+        public Builder cross(int a, int b, int c, int d){
+            check(a); check(b); check(c); check(d);
+            if (nCross+4>cross.length) cross=Arrays.copyOf(cross, cross.length*2);
+            cross[nCross++]=a; cross[nCross++]=b; cross[nCross++]=c; cross[nCross++]=d;
+            return this;
+        }
+
+        /** Declares the links {@code ends[0]-ends[1]}, {@code ends[2]-ends[3]}, ... as mutually crossing. */
+        public Builder group(int... ends){
+            if (ends.length<4 || ends.length%2!=0) throw new IllegalArgumentException("group needs two or more links");
+            for (int i=0;i<ends.length;i+=2)
+                for (int j=i+2;j<ends.length;j+=2) cross(ends[i], ends[i+1], ends[j], ends[j+1]);
+            return this;
+        }
+
+        /** Names the train classes; class 0 is the one trains get by default. */
+        public Builder classes(String... names){
+            if (names.length==0) throw new IllegalArgumentException("no train classes");
+            if (new HashSet<>(Arrays.asList(names)).size()!=names.length) throw new IllegalArgumentException("duplicate train class");
+            if (nRules>0) throw new IllegalArgumentException("classes must be declared before priorities");
+            classes=names.clone();
+            return this;
+        }
+
+        /** Priority p for moves over link a-b, both ways, for every class. */
+        public Builder priority(int p, int a, int b){ return rule(-1, p, a, b); }
+
+        /** Priority p for moves over link a-b, both ways, for class {@code cls} only. */
+        public Builder priority(String cls, int p, int a, int b){
+            for (int c=0;c<classes.length;c++) if (classes[c].equals(cls)) return rule(c, p, a, b);
+            throw new IllegalArgumentException("no such train class: "+cls);
+        }
+
+        private Builder rule(int cls, int p, int a, int b){
+            check(a); check(b);
+            if (p<0 || p>Policy.MAX_PRIORITY) throw new IllegalArgumentException("priority "+p+" outside 0.."+Policy.MAX_PRIORITY);
+            if (nRules+4>rules.length) rules=Arrays.copyOf(rules, rules.length*2);
+            rules[nRules++]=cls; rules[nRules++]=p; rules[nRules++]=a; rules[nRules++]=b;
+            return this;
+        }
+
+        /** Takes move priorities (and train classes) from {@code p} instead of priority rules. */
+        public Builder policy(Policy p){ policy=p; return this; }
+
+        public Topology build(){
+            // counting sort of both directions into CSR
+            int[] off=new int[max+2];
+            for (int i=0;i<nEnds;i++) off[ends[i]+1]++;
+            for (int s=0;s<=max;s++) off[s+1]+=off[s];
+            int[] adj=new int[nEnds], fill=Arrays.copyOf(off, max+1);
+            for (int i=0;i<nEnds;i+=2){
+                adj[fill[ends[i]]++]=ends[i+1];
+                adj[fill[ends[i+1]]++]=ends[i];
+            }
+            // sort and de-duplicate each row, then compact
+            int w=0;
+            int[] nOff=new int[max+2];
+            for (int s=0;s<=max;s++){
+                int lo=off[s], hi=off[s+1];
+                Arrays.sort(adj, lo, hi);
+                nOff[s]=w;
+                for (int i=lo;i<hi;i++) if (i==lo || adj[i]!=adj[i-1]) adj[w++]=adj[i];
+            }
+            nOff[max+1]=w;
+            adj=Arrays.copyOf(adj, w);
+            String[] cls=policy!=null ? policy.classes().clone() : classes.clone();
+            if (cls.length==0) throw new IllegalArgumentException("policy declares no train classes");
+            return new Topology(min, max, nOff, adj, exits.clone(), Arrays.copyOf(cross, nCross), cls, compile(nOff, adj, cls.length));
+        }
+
+        /** One priority table per class, indexed by directed edge id (the slot in adj). */
+        private int[] compile(int[] off, int[] adj, int nCls){
+            int edges=adj.length;
+            int[] prio=new int[nCls*edges];
+            if (policy!=null){
+                for (int c=0;c<nCls;c++)
+                    for (int s=min;s<=max;s++)
+                        for (int e=off[s];e<off[s+1];e++){
+                            int p=policy.priority(c, s, adj[e]);
+                            if (p<0 || p>Policy.MAX_PRIORITY) throw new IllegalArgumentException("priority "+p+" outside 0.."+Policy.MAX_PRIORITY);
+                            prio[c*edges+e]=p;
+                        }
+                return prio;
+            }
+            Arrays.fill(prio, 1);
+            for (int i=0;i<nRules;i+=4){
+                int a=rules[i+2], b=rules[i+3];
+                int ab=Arrays.binarySearch(adj, off[a], off[a+1], b), ba=Arrays.binarySearch(adj, off[b], off[b+1], a);
+                if (ab<0) throw new IllegalArgumentException("priority for missing link "+a+"-"+b);
+                for (int c=0;c<nCls;c++){
+                    if (rules[i]>=0 && rules[i]!=c) continue;
+                    prio[c*edges+ab]=rules[i+1];
+                    prio[c*edges+ba]=rules[i+1];
+                }
+            }
+            return prio;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Simulated ticks per second: {@code simulate(ticks)} against a {@code moveTrains(String[])}
+ * loop that asks every train still in the corridor to move each tick.
+ *
+ * Trains enter on every row of a square grid heading east and on every column heading
+ * south, so the flows cross and contend at each junction. Both runs start from the same
+ * state and must end in the same state.
+ *
+ * Run: {@code java BatchSimulationBench [gridWidth] [ticks]}
+ */
+public class BatchSimulationBench {
+
+    public static void main(String[] args) {
+        int w = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2 * w;
+        for (int rep = 0; rep < 30; rep++) {
+            InterlockingImpl loop = grid(w), batch = grid(w);
+            int trains = loop.nTrains;
+
+            long t0 = System.nanoTime();
+            String[] live = new String[trains];
+            for (int t = 0; t < ticks; t++) {
+                int n = 0;
+                for (int h = 0; h < trains; h++) if (loop.getTrain(h) >= 0) live[n++] = loop.trainName(h);
+                if (n == 0) break;
+                loop.moveTrains(n == trains ? live : java.util.Arrays.copyOf(live, n));
+            }
+            long loopNs = System.nanoTime() - t0;
+
+            t0 = System.nanoTime();
+            Simulation sim = batch.simulate(ticks);
+            long batchNs = System.nanoTime() - t0;
+
+            for (int h = 0; h < trains; h++)
+                if (sim.position(h) != loop.getTrain(h)) throw new AssertionError("diverged at train " + h);
+            if (rep >= 25) System.out.printf("grid %dx%d, %d trains, %d ticks: loop %.0f ticks/s, batch %.0f ticks/s (x%.1f)%n",
+                    w, w, trains, ticks, ticks / (loopNs / 1e9), ticks / (batchNs / 1e9), (double) loopNs / batchNs);
+        }
+    }
+
+    static InterlockingImpl grid(int w) {
+        Topology.Builder b = new Topology.Builder(0, w * w - 1);
+        for (int r = 0; r < w; r++) for (int c = 0; c < w; c++) {
+            int s = r * w + c;
+            if (c + 1 < w) b.link(s, s + 1);
+            if (r + 1 < w) b.link(s, s + w);
+            if (r == 0 || c == 0 || r == w - 1 || c == w - 1) b.exit(s);
+        }
+        InterlockingImpl il = new InterlockingImpl(b.build());
+        il.precomputeRoutes();          // keep tree building out of both timings
+        for (int i = 0; i < w; i++) {
+            il.addTrainHandle("east-" + i, i * w, i * w + w - 1);
+            if (i > 0 && i < w - 1) il.addTrainHandle("south-" + i, i, (w - 1) * w + i);
+        }
+        return il;
+    }
+}
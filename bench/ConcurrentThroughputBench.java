@@ -0,0 +1,102 @@
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Ticks per second with 1..32 dispatcher threads, each driving its own line of track.
+ *
+ * Every thread owns one {@code LEN}-section line with an exit at the far end, feeds a
+ * new train in at the entry every few ticks and moves all of its live trains each tick,
+ * so the threads' regions never overlap. The same workload runs against
+ * {@link ConcurrentInterlocking} and against a plain {@link InterlockingImpl} behind one
+ * global lock (what the dispatchers did before). Scaling is bounded by the cores the
+ * JVM is given; on a single core the two columns track each other.
+ *
+ * Run: {@code java ConcurrentThroughputBench [threads...]}
+ */
+public class ConcurrentThroughputBench {
+
+    static final int LEN = 64, TICKS = 20_000, FEED = 4;
+
+    interface Engine {
+        int add(String name, int entry, int dest);
+        int move(int[] hs);
+        int at(int h);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[] {1, 2, 4, 8, 16, 32} : new int[args.length];
+        for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+
+        System.out.printf("cpus=%d%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %14s %14s%n", "threads", "striped t/s", "global t/s");
+        for (int n : sizes) {
+            Topology topo = lines(n);
+            int capacity = n * (TICKS / FEED + 1);
+            run(n, concurrent(topo, capacity, n));      // warm-up
+            double striped = run(n, concurrent(topo, capacity, n));
+            run(n, global(topo));
+            double global = run(n, global(topo));
+            System.out.printf("%8d %14.0f %14.0f%n", n, striped, global);
+        }
+    }
+
+    static Topology lines(int n) {
+        Topology.Builder b = new Topology.Builder(0, n * LEN - 1);
+        for (int l = 0; l < n; l++) {
+            int base = l * LEN;
+            for (int s = 0; s < LEN - 1; s++) b.link(base + s, base + s + 1);
+            b.exit(base + LEN - 1);
+        }
+        return b.build();
+    }
+
+    static Engine concurrent(Topology topo, int capacity, int lines) {
+        ConcurrentInterlocking il = new ConcurrentInterlocking(topo, capacity, lines);
+        return new Engine() {
+            public int add(String name, int entry, int dest) { return il.addTrainHandle(name, entry, dest); }
+            public int move(int[] hs) { return il.moveTrains(hs); }
+            public int at(int h) { return il.getTrain(h); }
+        };
+    }
+
+    static Engine global(Topology topo) {
+        InterlockingImpl il = new InterlockingImpl(topo);
+        return new Engine() {
+            public synchronized int add(String name, int entry, int dest) { return il.addTrainHandle(name, entry, dest); }
+            public synchronized int move(int[] hs) { return il.moveTrains(hs); }
+            public synchronized int at(int h) { return il.getTrain(h); }
+        };
+    }
+
+    /** Runs TICKS ticks on each of n threads; returns total ticks per second. */
+    static double run(int n, Engine e) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(n + 1), end = new CyclicBarrier(n + 1);
+        for (int t = 0; t < n; t++) {
+            int line = t;
+            Thread th = new Thread(() -> {
+                int entry = line * LEN, dest = entry + LEN - 1, live = 0, seq = 0;
+                int[] hs = new int[LEN];
+                try {
+                    start.await();
+                    for (int tick = 0; tick < TICKS; tick++) {
+                        if (tick % FEED == 0 && live < LEN && (live == 0 || e.at(hs[live - 1]) != entry))
+                            hs[live++] = e.add(line + ":" + seq++, entry, dest);
+                        if (live == 0) continue;
+                        e.move(live == hs.length ? hs : java.util.Arrays.copyOf(hs, live));
+                        int k = 0;
+                        for (int i = 0; i < live; i++) if (e.at(hs[i]) >= 0) hs[k++] = hs[i];
+                        live = k;
+                    }
+                    end.await();
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            th.setDaemon(true);
+            th.start();
+        }
+        start.await();
+        long t0 = System.nanoTime();
+        end.await();
+        return (double) n * TICKS / ((System.nanoTime() - t0) / 1e9);
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Requests per second and p99 request latency for many clients sharing one engine, with
+ * each request a direct {@code moveTrains} call behind a lock, or coalesced by a
+ * {@link Gateway}.
+ *
+ * Every client owns one {@code LEN}-section line and keeps one train on it: it asks for
+ * that train to move, and adds a new one at the entry once the train has left. Clients
+ * run one thread each: virtual threads when the JDK has them (21 and later), else
+ * platform threads.
+ *
+ * Run: {@code java GatewayBench [clients] [requests per client] [window micros]}
+ */
+public class GatewayBench {
+
+    // Short lines: the engine keeps a routing tree over every section per destination.
+    static final int LEN = 4;
+
+    interface Client {
+        void add(String name, int entry, int dest) throws Exception;
+        int move(String name) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int per = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long window = (args.length > 2 ? Long.parseLong(args[2]) : 200) * 1_000;
+        System.out.printf("clients=%d requests/client=%d window=%d us threads=%s%n",
+                clients, per, window / 1_000, virtualThreads() != null ? "virtual" : "platform");
+        for (int rep = 0; rep < 2; rep++) {
+            InterlockingImpl direct = new InterlockingImpl(lines(clients));
+            report("direct", clients, per, run(clients, per, new Client() {
+                public void add(String name, int entry, int dest) { synchronized (direct) { direct.addTrain(name, entry, dest); } }
+                public int move(String name) {
+                    synchronized (direct) { direct.moveTrains(new String[] {name}); return direct.getTrain(name); }
+                }
+            }));
+            try (Gateway g = new Gateway(new InterlockingImpl(lines(clients)), window, Integer.MAX_VALUE)) {
+                report("gateway", clients, per, run(clients, per, new Client() {
+                    public void add(String name, int entry, int dest) throws Exception { g.addTrain(name, entry, dest).get(); }
+                    public int move(String name) throws Exception { return g.move(name).get().section(); }
+                }));
+                System.out.printf("%10s mean batch %.1f requests%n", "", (double) g.requests() / g.ticks());
+            }
+        }
+    }
+
+    static Topology lines(int n) {
+        Topology.Builder b = new Topology.Builder(0, n * LEN - 1);
+        for (int l = 0; l < n; l++) {
+            for (int s = 0; s < LEN - 1; s++) b.link(l * LEN + s, l * LEN + s + 1);
+            b.exit(l * LEN + LEN - 1);
+        }
+        return b.build();
+    }
+
+    static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** Returns every request's latency in nanos, with the elapsed wall time in the last slot. */
+    static long[] run(int clients, int per, Client c) throws Exception {
+        ExecutorService ex = virtualThreads();
+        if (ex == null) ex = Executors.newFixedThreadPool(clients);
+        long[] lat = new long[clients * per + 1];
+        CountDownLatch go = new CountDownLatch(1), done = new CountDownLatch(clients);
+        List<Exception> failed = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int line = i;
+            ex.execute(() -> {
+                int entry = line * LEN, dest = entry + LEN - 1, seq = 0;
+                String name = null;
+                try {
+                    go.await();
+                    for (int r = 0; r < per; r++) {
+                        long t0 = System.nanoTime();
+                        if (name == null) c.add(name = line + ":" + seq++, entry, dest);
+                        else if (c.move(name) < 0) name = null;
+                        lat[line * per + r] = System.nanoTime() - t0;
+                    }
+                } catch (Exception e) {
+                    synchronized (failed) { failed.add(e); }
+                }
+                done.countDown();
+            });
+        }
+        long t0 = System.nanoTime();
+        go.countDown();
+        done.await();
+        lat[lat.length - 1] = System.nanoTime() - t0;
+        ex.shutdown();
+        if (!failed.isEmpty()) throw failed.get(0);
+        return lat;
+    }
+
+    static void report(String label, int clients, int per, long[] lat) {
+        long wall = lat[lat.length - 1];
+        long[] l = Arrays.copyOf(lat, lat.length - 1);
+        Arrays.sort(l);
+        System.out.printf("%10s %12.0f req/s   p50 %8.1f us   p99 %8.1f us%n", label,
+                (double) l.length / (wall / 1e9), l[l.length / 2] / 1e3, l[(int) (l.length * 0.99)] / 1e3);
+    }
+}
@@ -0,0 +1,53 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Journal write overhead and replay speed.
+ *
+ * N trains are placed every other section along a long line and all head for the far
+ * end, so every tick journals N moves. The journal is then replayed into a fresh engine
+ * and the rebuilt state checked against the original. An event is one recorded add or
+ * one recorded train move.
+ *
+ * Run: {@code java JournalReplayBench [trains] [ticks]}
+ */
+public class JournalReplayBench {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int len = 2 * n + ticks + 2;
+        Topology.Builder b = new Topology.Builder(1, len);
+        for (int s = 1; s < len; s++) b.link(s, s + 1);
+        Topology line = b.exit(len).build();
+        Path file = Files.createTempFile("interlocking", ".journal");
+        try {
+            for (int rep = 0; rep < 3; rep++) {
+                Files.deleteIfExists(file);
+                InterlockingImpl il = new InterlockingImpl(line);
+                int[] hs = new int[n];
+                long t0 = System.nanoTime(), bytes;
+                try (Journal j = Journal.open(file, line)) {
+                    il.setJournal(j);
+                    for (int i = 0; i < n; i++) hs[i] = il.addTrainHandle("T" + i, 1 + 2 * i, len);
+                    for (int t = 0; t < ticks; t++) il.moveTrains(hs);
+                    bytes = j.position();
+                }
+                long write = System.nanoTime() - t0;
+                long events = (long) n * (ticks + 1);
+
+                InterlockingImpl back = new InterlockingImpl(line);
+                t0 = System.nanoTime();
+                Journal.replay(file, back, 0);
+                long replay = System.nanoTime() - t0;
+                for (int h = 0; h < n; h++)
+                    if (back.getTrain(h) != il.getTrain(h)) throw new AssertionError("replay diverged at " + h);
+
+                System.out.printf("%d events (%.1f MB): write %.1f M events/s, replay %.1f M events/s%n",
+                        events, bytes / 1e6, events / (write / 1e3), events / (replay / 1e3));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
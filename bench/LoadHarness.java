@@ -0,0 +1,436 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Load generator and trace replay for any {@link Interlocking}, with a throughput report
+ * and a safety check after every tick.
+ *
+ * {@code generate} drives synthetic traffic. Trains arrive as a Poisson process
+ * ({@code --rate} trains per tick on average) at origins drawn from {@code --origins} and
+ * head for destinations drawn from {@code --dests}. Each mix is a list such as
+ * {@code 1:3,7:1} of section:weight; the default is every exit, equally weighted. A
+ * {@code --freight} share of trains are freight, the rest passenger (class names only
+ * reach engines whose topology declares them). An arrival whose origin is occupied
+ * waits in line, and its dwell counts from when it got in. Every tick asks every train
+ * in the corridor to move. {@code --record FILE} saves the commands that were issued as
+ * a trace.
+ *
+ * {@code replay TRACE} feeds a recorded trace back, tick by tick: its adds, then one
+ * {@code moveTrains} call with the trains it names that are still in the corridor.
+ * Traces are CSV ({@code *.csv}: header {@code tick,op,train,entry,dest,class}, op
+ * {@code add} or {@code move}, unused fields empty) or the compact binary form written
+ * by {@link Trace#write}.
+ *
+ * After every tick the harness checks, through the public interface only, that no two
+ * trains share a section, that every move follows a link or leaves from an exit, that no
+ * train moved without being asked, and that no two moves swapped sections or crossed.
+ * Crossings are checked against the engine's conflict table as it stands that tick, so
+ * ones added or removed at runtime count; for an engine that is not an
+ * {@link InterlockingImpl}, only the topology's own crossings are checked.
+ *
+ * Run: {@code java LoadHarness generate [--ticks N] [--rate R] [--freight F] [--origins MIX] [--dests MIX] [--seed S] [--record FILE] [common]}
+ * or {@code java LoadHarness replay TRACE [common]}, where common is
+ * {@code [--topology corridor|grid|FILE] [--engine single|concurrent|sharded] [--capacity N] [--tick-seconds S]}.
+ * The concurrent engine's train capacity bounds every train ever added (handles are not
+ * reused without retention). It defaults to the trace's adds, or to the expected arrivals
+ * with a margin; running out stops the harness with the engine's exception.
+ */
+public class LoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) usage();
+        Map<String, String> opt = new HashMap<>();
+        String trace = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) opt.put(args[i].substring(2), args[++i]);
+            else if (trace == null) trace = args[i];
+            else usage();
+        }
+        Topology topo = topology(opt.getOrDefault("topology", "corridor"));
+        String engine = opt.getOrDefault("engine", "single");
+        double tickSeconds = Double.parseDouble(opt.getOrDefault("tick-seconds", "10"));
+
+        List<Trace.Record> log = new ArrayList<>();
+        Run run;
+        if (args[0].equals("generate")) {
+            int ticks = Integer.parseInt(opt.getOrDefault("ticks", "10000"));
+            double rate = Double.parseDouble(opt.getOrDefault("rate", "0.2"));
+            Generator g = new Generator(topo, rate,
+                    Double.parseDouble(opt.getOrDefault("freight", "0.3")),
+                    mix(topo, opt.get("origins")), mix(topo, opt.get("dests")),
+                    Long.parseLong(opt.getOrDefault("seed", "1")));
+            int expected = (int) Math.min(Integer.MAX_VALUE / 2, Math.ceil(rate * ticks * 1.25) + 64);
+            run = new Run(topo, engine(engine, topo, capacity(opt, expected)), opt.containsKey("record") ? log : null);
+            for (int t = 0; t < ticks; t++) g.tick(run, t);
+            if (opt.containsKey("record")) Trace.write(Paths.get(opt.get("record")), log);
+        } else if (args[0].equals("replay") && trace != null) {
+            List<Trace.Record> recs = Trace.read(Paths.get(trace));
+            int ticks = recs.isEmpty() ? 0 : recs.get(recs.size() - 1).tick + 1;
+            int adds = 0;
+            for (Trace.Record r : recs) if (r.op == Trace.ADD) adds++;
+            run = new Run(topo, engine(engine, topo, capacity(opt, adds)), null);
+            int i = 0;
+            for (int t = 0; t < ticks; t++) {
+                List<String> moves = new ArrayList<>();
+                for (; i < recs.size() && recs.get(i).tick == t; i++) {
+                    Trace.Record r = recs.get(i);
+                    if (r.op == Trace.ADD) run.add(t, r.train, r.entry, r.dest, r.cls);
+                    else moves.add(r.train);
+                }
+                run.move(t, moves);
+            }
+        } else {
+            usage();
+            return;
+        }
+        run.report(System.out, engine, tickSeconds);
+        if (run.violations > 0) System.exit(1);
+    }
+
+    private static void usage() {
+        System.err.println("usage: LoadHarness generate [options] | LoadHarness replay TRACE [options] (see the class comment)");
+        System.exit(2);
+    }
+
+    static Topology topology(String spec) throws IOException {
+        if (spec.equals("corridor")) return Topology.corridor();
+        if (spec.equals("grid")) return Grids.grid(16);
+        try (Reader in = Files.newBufferedReader(Paths.get(spec), StandardCharsets.UTF_8)) { return Topology.parse(in); }
+    }
+
+    static int capacity(Map<String, String> opt, int trains) {
+        return opt.containsKey("capacity") ? Integer.parseInt(opt.get("capacity")) : Math.max(1024, trains);
+    }
+
+    static Interlocking engine(String kind, Topology topo, int capacity) {
+        switch (kind) {
+            case "single": return new InterlockingImpl(topo);
+            case "concurrent": return new ConcurrentInterlocking(topo, capacity);
+            case "sharded": return new ShardedInterlocking(topo, Math.max(2, ForkJoinPool.getCommonPoolParallelism()));
+            default: throw new IllegalArgumentException("unknown engine: " + kind);
+        }
+    }
+
+    /** Parses "s:w,s:w" into {sections, cumulative weights}; null means every exit at weight 1. */
+    static int[][] mix(Topology topo, String spec) {
+        List<int[]> l = new ArrayList<>();
+        if (spec == null) {
+            for (int s = topo.min; s <= topo.max; s++) if (topo.isExit(s)) l.add(new int[] {s, 1});
+        } else {
+            for (String part : spec.split(",")) {
+                String[] sw = part.split(":");
+                l.add(new int[] {Integer.parseInt(sw[0].trim()), sw.length > 1 ? Integer.parseInt(sw[1].trim()) : 1});
+            }
+        }
+        if (l.isEmpty()) throw new IllegalArgumentException("empty origin/destination mix");
+        int[][] m = new int[2][l.size()];
+        int sum = 0;
+        for (int i = 0; i < l.size(); i++) { m[0][i] = l.get(i)[0]; m[1][i] = sum += l.get(i)[1]; }
+        return m;
+    }
+
+    // ----- Synthetic traffic -----
+
+    static final class Generator {
+        final Topology topo;
+        final double rate, freight;
+        final int[][] origins, dests;
+        final Random rnd;
+        final String passengerCls, freightCls;
+        final ArrayDeque<String[]> waiting = new ArrayDeque<>();   // {name, entry, dest, class}
+        int seq;
+
+        Generator(Topology topo, double rate, double freight, int[][] origins, int[][] dests, long seed) {
+            this.topo = topo; this.rate = rate; this.freight = freight;
+            this.origins = origins; this.dests = dests; this.rnd = new Random(seed);
+            passengerCls = hasClass(topo, "passenger") ? "passenger" : "";
+            freightCls = hasClass(topo, "freight") ? "freight" : "";
+        }
+
+        static boolean hasClass(Topology topo, String name) {
+            for (int c = 0; c < topo.classes(); c++) if (topo.className(c).equals(name)) return true;
+            return false;
+        }
+
+        /** Knuth's method; fine for the small per-tick rates a corridor sees. */
+        int poisson() {
+            double l = Math.exp(-rate), p = rnd.nextDouble();
+            int k = 0;
+            while (p > l) { k++; p *= rnd.nextDouble(); }
+            return k;
+        }
+
+        int pick(int[][] m) {
+            int r = rnd.nextInt(m[1][m[1].length - 1]), i = 0;
+            while (m[1][i] <= r) i++;
+            return m[0][i];
+        }
+
+        void tick(Run run, int t) {
+            for (int k = poisson(); k > 0; k--) {
+                int o = pick(origins), d = pick(dests);
+                for (int tries = 0; d == o && tries < 8; tries++) d = pick(dests);
+                if (d == o) continue;
+                String cls = rnd.nextDouble() < freight ? freightCls : passengerCls;
+                waiting.add(new String[] {"G" + seq++, Integer.toString(o), Integer.toString(d), cls});
+            }
+            for (int n = waiting.size(); n > 0; n--) {
+                String[] a = waiting.poll();
+                if (run.add(t, a[0], Integer.parseInt(a[1]), Integer.parseInt(a[2]), a[3]) == Run.BUSY) waiting.add(a);
+            }
+            run.move(t, run.live());
+        }
+    }
+
+    // ----- Running, checking and reporting -----
+
+    static final class Run {
+        static final int ADDED = 0, BUSY = 1, REFUSED = 2;
+
+        final Topology topo;
+        final Interlocking il;
+        final List<Trace.Record> log;         // commands issued, when recording
+
+        // Per train, in order of addition.
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+        int[] cur = new int[64], added = new int[64], blocked = new int[64];
+        int[] live = new int[64];               // ids of trains in the corridor, in order of addition
+        int nLive;
+        int exited, refused, unknownMoves, violations;
+        long dwell, blockedTotal;
+
+        long[] latency = new long[1024];
+        int ticks;
+
+        // Per-tick check scratch.
+        final int[] owner, ownerStamp, moveTo, moveStamp;
+        final long[] claimed;
+        int stamp;
+        final List<String> firstViolations = new ArrayList<>();
+
+        Run(Topology topo, Interlocking il, List<Trace.Record> log) {
+            this.topo = topo; this.il = il; this.log = log;
+            int n = topo.max + 1;
+            owner = new int[n]; ownerStamp = new int[n]; moveTo = new int[n]; moveStamp = new int[n];
+            claimed = new long[(topo.edges() + 63) >>> 6];
+        }
+
+        int add(int t, String name, int entry, int dest, String cls) {
+            if (ids.containsKey(name)) { refused++; return REFUSED; }
+            // Only an occupied entry means "wait"; any other IllegalStateException (such as
+            // running out of capacity) ends the run.
+            if (topo.contains(entry) && il.getSection(entry) != null) return BUSY;
+            try {
+                if (!cls.isEmpty() && il instanceof InterlockingImpl) ((InterlockingImpl) il).addTrain(name, entry, dest, cls);
+                else il.addTrain(name, entry, dest);
+            } catch (IllegalArgumentException bad) {
+                refused++;
+                return REFUSED;
+            }
+            int id = names.size();
+            if (id == cur.length) {
+                cur = Arrays.copyOf(cur, id * 2); added = Arrays.copyOf(added, id * 2); blocked = Arrays.copyOf(blocked, id * 2);
+            }
+            ids.put(name, id);
+            names.add(name);
+            cur[id] = entry; added[id] = t;
+            if (nLive == live.length) live = Arrays.copyOf(live, nLive * 2);
+            live[nLive++] = id;
+            if (log != null) log.add(new Trace.Record(t, Trace.ADD, name, entry, dest, cls));
+            return ADDED;
+        }
+
+        List<String> live() {
+            List<String> l = new ArrayList<>(nLive);
+            for (int k = 0; k < nLive; k++) l.add(names.get(live[k]));
+            return l;
+        }
+
+        void move(int t, List<String> asked) {
+            List<String> hs = new ArrayList<>(asked.size());
+            for (String n : asked) {
+                Integer id = ids.get(n);
+                if (id != null && cur[id] >= 0) hs.add(n); else unknownMoves++;
+            }
+            long t0 = System.nanoTime();
+            if (!hs.isEmpty()) il.moveTrains(hs.toArray(new String[0]));
+            long dt = System.nanoTime() - t0;
+            if (ticks == latency.length) latency = Arrays.copyOf(latency, ticks * 2);
+            latency[ticks++] = dt;
+            if (log != null) for (String n : hs) log.add(new Trace.Record(t, Trace.MOVE, n, -1, -1, ""));
+            check(t, hs);
+        }
+
+        private void violation(int t, String what) {
+            violations++;
+            if (firstViolations.size() < 10) firstViolations.add("tick " + t + ": " + what);
+        }
+
+        /**
+         * Compares every train in the corridor with its position after the last tick and
+         * checks the safety rules; trains that exited are dropped from the live list.
+         */
+        private void check(int t, List<String> asked) {
+            int s = ++stamp;
+            Set<String> askedSet = new HashSet<>(asked);
+            List<int[]> moves = new ArrayList<>();
+            int kept = 0;
+            for (int k = 0; k < nLive; k++) {
+                int i = live[k], from = cur[i];
+                String n = names.get(i);
+                int to = il.getTrain(n);
+                if (to != from) {
+                    if (!askedSet.contains(n)) violation(t, n + " moved without being asked");
+                    if (to >= 0 ? topo.edge(from, to) < 0 : !topo.isExit(from))
+                        violation(t, n + " jumped " + from + "→" + (to < 0 ? "out" : to));
+                    moves.add(new int[] {from, to});
+                    if (to < 0) { exited++; dwell += t + 1 - added[i]; blockedTotal += blocked[i]; }
+                } else if (askedSet.contains(n)) blocked[i]++;
+                cur[i] = to;
+                if (to < 0) continue;
+                live[kept++] = i;
+                if (ownerStamp[to] == s) violation(t, "double occupancy of " + to + ": " + names.get(owner[to]) + ", " + n);
+                ownerStamp[to] = s; owner[to] = i;
+                if (!n.equals(il.getSection(to))) violation(t, "section " + to + " does not report " + n);
+            }
+            nLive = kept;
+            for (int[] m : moves) { moveTo[m[0]] = m[1]; moveStamp[m[0]] = s; }
+            int[] confOff = topo.confOff, conf = topo.conf;
+            if (il instanceof InterlockingImpl) { confOff = ((InterlockingImpl) il).confOff; conf = ((InterlockingImpl) il).conf; }
+            for (int[] m : moves) {
+                int from = m[0], to = m[1];
+                if (to < 0) continue;
+                if (moveStamp[to] == s && moveTo[to] == from) violation(t, "swap " + from + "↔" + to);
+                int e = topo.edge(from, to);
+                if (e < 0) continue;
+                for (int i = confOff[e]; i < confOff[e + 1]; i++) {
+                    int f = conf[i];
+                    if ((claimed[f >>> 6] & (1L << f)) != 0) violation(t, "crossing move " + from + "→" + to);
+                }
+                claimed[e >>> 6] |= 1L << e;
+            }
+            for (int[] m : moves) if (m[1] >= 0 && topo.edge(m[0], m[1]) >= 0) claimed[topo.edge(m[0], m[1]) >>> 6] = 0;
+        }
+
+        void report(PrintStream out, String engine, double tickSeconds) {
+            long[] lat = Arrays.copyOf(latency, ticks);
+            Arrays.sort(lat);
+            double mean = 0;
+            for (long l : lat) mean += l;
+            mean = ticks == 0 ? 0 : mean / ticks;
+            long p99 = ticks == 0 ? 0 : lat[Math.min(ticks - 1, (int) Math.ceil(ticks * 0.99) - 1)];
+            double hours = ticks * tickSeconds / 3600;
+            // Blocked ticks of trains still in the corridor count too.
+            long blockedAll = blockedTotal;
+            for (int k = 0; k < nLive; k++) blockedAll += blocked[live[k]];
+
+            out.printf("engine %s, %d sections, %d ticks of %.1f s%n", engine, topo.sections(), ticks, tickSeconds);
+            out.printf("trains      %d added, %d exited, %d adds refused, %d moves of absent trains%n",
+                    names.size(), exited, refused, unknownMoves);
+            out.printf("throughput  %.1f trains/hour%n", hours == 0 ? 0 : exited / hours);
+            out.printf("tick        mean %.1f us, p99 %.1f us%n", mean / 1e3, p99 / 1e3);
+            out.printf("per train   dwell %.1f ticks (exited trains), blocked %.2f ticks%n",
+                    exited == 0 ? 0 : (double) dwell / exited, names.isEmpty() ? 0 : (double) blockedAll / names.size());
+            if (violations == 0) out.printf("safety      ok on every tick%n");
+            else {
+                out.printf("safety      %d violations%n", violations);
+                for (String v : firstViolations) out.println("  " + v);
+            }
+        }
+    }
+
+    // ----- Traces -----
+
+    /** Recorded dispatcher commands: CSV, or binary (magic, version, then TICK/ADD/MOVE records). */
+    static final class Trace {
+        static final byte TICK = 0, ADD = 1, MOVE = 2;
+        static final int MAGIC = 0x494C5452, VERSION = 1;      // "ILTR"
+
+        static final class Record {
+            final int tick;
+            final byte op;
+            final String train, cls;
+            final int entry, dest;
+
+            Record(int tick, byte op, String train, int entry, int dest, String cls) {
+                this.tick = tick; this.op = op; this.train = train; this.entry = entry; this.dest = dest; this.cls = cls;
+            }
+        }
+
+        static boolean csv(Path p) { return p.getFileName().toString().endsWith(".csv"); }
+
+        static void write(Path p, List<Record> recs) throws IOException {
+            if (csv(p)) {
+                try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(p, StandardCharsets.UTF_8))) {
+                    w.println("tick,op,train,entry,dest,class");
+                    for (Record r : recs) {
+                        if (r.op == ADD) w.printf("%d,add,%s,%d,%d,%s%n", r.tick, r.train, r.entry, r.dest, r.cls);
+                        else w.printf("%d,move,%s,,,%n", r.tick, r.train);
+                    }
+                }
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(p)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                int tick = -1;
+                for (Record r : recs) {
+                    if (r.tick != tick) { out.writeByte(TICK); out.writeInt(tick = r.tick); }
+                    out.writeByte(r.op);
+                    out.writeUTF(r.train);
+                    if (r.op == ADD) { out.writeInt(r.entry); out.writeInt(r.dest); out.writeUTF(r.cls); }
+                }
+            }
+        }
+
+        /** Reads a trace; records come back in file order, which must be by tick. */
+        static List<Record> read(Path p) throws IOException {
+            List<Record> recs = new ArrayList<>();
+            if (csv(p)) {
+                try (BufferedReader in = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
+                    String line = in.readLine();
+                    int no = 1;
+                    while ((line = in.readLine()) != null) {
+                        no++;
+                        if (line.isBlank()) continue;
+                        String[] f = line.split(",", -1);
+                        if (f.length < 3) throw new IOException(p + ":" + no + ": expected tick,op,train,...");
+                        int tick = Integer.parseInt(f[0].trim());
+                        String op = f[1].trim(), name = f[2].trim();
+                        if (op.equals("add")) {
+                            if (f.length < 5) throw new IOException(p + ":" + no + ": add needs entry and dest");
+                            recs.add(new Record(tick, ADD, name, Integer.parseInt(f[3].trim()), Integer.parseInt(f[4].trim()),
+                                    f.length > 5 ? f[5].trim() : ""));
+                        } else if (op.equals("move")) recs.add(new Record(tick, MOVE, name, -1, -1, ""));
+                        else throw new IOException(p + ":" + no + ": unknown op " + op);
+                        if (recs.size() > 1 && recs.get(recs.size() - 2).tick > tick) throw new IOException(p + ":" + no + ": ticks go backwards");
+                    }
+                }
+                return recs;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+                if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) throw new IOException(p + ": not a trace");
+                int tick = 0, op;
+                while ((op = in.read()) >= 0) {
+                    if (op == TICK) {
+                        int next = in.readInt();
+                        if (next < tick) throw new IOException(p + ": ticks go backwards");
+                        tick = next;
+                    } else if (op == ADD) {
+                        String name = in.readUTF();
+                        int entry = in.readInt(), dest = in.readInt();
+                        recs.add(new Record(tick, ADD, name, entry, dest, in.readUTF()));
+                    } else if (op == MOVE) recs.add(new Record(tick, MOVE, in.readUTF(), -1, -1, ""));
+                    else throw new IOException(p + ": bad record " + op);
+                }
+            }
+            return recs;
+        }
+    }
+}
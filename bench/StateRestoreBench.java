@@ -0,0 +1,44 @@
+import java.io.*;
+
+/**
+ * Size of a state image and the time to write and restore it.
+ *
+ * N trains are placed every other section along a line, half of them moved once so the
+ * lastFrom and reached columns are not all default, then the engine is written to memory
+ * and restored into a fresh engine on the same topology.
+ *
+ * Run: {@code java StateRestoreBench [trains]}
+ */
+public class StateRestoreBench {
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int len = 2 * n + 2;
+        Topology.Builder b = new Topology.Builder(1, len);
+        for (int s = 1; s < len; s++) b.link(s, s + 1);
+        Topology line = b.exit(len).build();
+        InterlockingImpl il = new InterlockingImpl(line);
+        int[] half = new int[n / 2];
+        for (int i = 0; i < n; i++) {
+            int h = il.addTrainHandle("T" + i, 1 + 2 * i, len);
+            if (i % 2 == 1) half[i / 2] = h;
+        }
+        il.moveTrains(half);
+
+        for (int rep = 0; rep < 5; rep++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(32 * n);
+            long t0 = System.nanoTime();
+            il.snapshot(out);
+            long write = System.nanoTime() - t0;
+            byte[] img = out.toByteArray();
+
+            InterlockingImpl back = new InterlockingImpl(line);
+            t0 = System.nanoTime();
+            back.restore(new ByteArrayInputStream(img));
+            long read = System.nanoTime() - t0;
+            if (back.getTrain(n - 1) != il.getTrain(n - 1)) throw new AssertionError("restore diverged");
+            System.out.printf("%d trains, %.1f MB: snapshot %.0f ms, restore %.0f ms%n",
+                    n, img.length / 1e6, write / 1e6, read / 1e6);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Tick time of {@code moveTrains} when every requested train is half of a head-on swap.
+ *
+ * The corridor is a line 1..2N with trains on every section; the train on 2k-1 heads
+ * east and the one on 2k heads west, so each tick produces N/2 swapping pairs and no
+ * winners. That isolates intent building and swap detection, and the nanoseconds per
+ * intent column should stay flat as N grows.
+ *
+ * Run: {@code java SwapDetectionBench [maxIntents]}
+ */
+public class SwapDetectionBench {
+
+    public static void main(String[] args) {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        System.out.printf("%8s %12s %12s%n", "intents", "us/tick", "ns/intent");
+        for (int n = 1_000; n <= max; n *= 2) run(n);
+        if (Integer.highestOneBit(max / 1_000) * 1_000 != max) run(max);
+    }
+
+    private static void run(int n) {
+        n &= ~1;
+        int sections = n;
+        Topology.Builder b = new Topology.Builder(1, sections);
+        for (int s = 1; s < sections; s++) b.link(s, s + 1);
+        InterlockingImpl il = new InterlockingImpl(b.exit(1).exit(sections).build());
+
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            int at = i + 1;
+            names[i] = "T" + at;
+            il.addTrain(names[i], at, (at & 1) == 1 ? sections : 1);
+        }
+
+        int warm = 20, reps = Math.max(20, 2_000_000 / n);
+        for (int i = 0; i < warm; i++) check(il.moveTrains(names));
+        long t0 = System.nanoTime();
+        for (int i = 0; i < reps; i++) check(il.moveTrains(names));
+        long per = (System.nanoTime() - t0) / reps;
+        System.out.printf("%8d %12.1f %12.1f%n", n, per / 1e3, (double) per / n);
+    }
+
+    private static void check(int moved) {
+        if (moved != 0) throw new AssertionError("swapping pairs must not move, moved=" + moved);
+    }
+}
@@ -0,0 +1,42 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated and time spent per {@code moveTrains} tick once the engine is warm.
+ *
+ * Trains are spaced every other section along a long line and all head for the far
+ * end, so every tick builds, sorts, selects and commits a full set of intents. The
+ * B/tick column is measured with the per-thread allocation counter and should read 0.
+ *
+ * Run: {@code java TickAllocationBench [trains...]}
+ */
+public class TickAllocationBench {
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[] {100, 1_000, 10_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        System.out.printf("%8s %12s %10s%n", "trains", "us/tick", "B/tick");
+        for (int n : sizes) {
+            int warm = 2_000, reps = 2_000;
+            int len = 2 * n + warm + reps + 2;
+            Topology.Builder b = new Topology.Builder(1, len);
+            for (int s = 1; s < len; s++) b.link(s, s + 1);
+            InterlockingImpl il = new InterlockingImpl(b.exit(len).build());
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) {
+                names[i] = "T" + i;
+                il.addTrain(names[i], 1 + 2 * i, len);
+            }
+
+            for (int i = 0; i < warm; i++) il.moveTrains(names);
+            long bytes = mx.getThreadAllocatedBytes(id);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < reps; i++) il.moveTrains(names);
+            long ns = System.nanoTime() - t0;
+            bytes = mx.getThreadAllocatedBytes(id) - bytes;
+            System.out.printf("%8d %12.1f %10.1f%n", n, ns / 1e3 / reps, (double) bytes / reps);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Time to place a scenario's whole set of trains with {@code addTrain} into an empty
+ * engine whose routing trees are already built; divide by the train count for the
+ * per-call cost. The engine is rebuilt, outside the measurement, before every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class AddTrainBench {
+
+    @Param({"corridor", "grid-100", "grid-10k", "ladder-100k"})
+    public String scenario;
+
+    @Param({"1", "1000", "50000"})
+    public int trains;
+
+    private Scenario sc;
+    private InterlockingImpl il;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sc = Scenario.of(scenario, trains, "free");
+        names = new String[sc.trains()];
+        for (int i = 0; i < names.length; i++) names[i] = "T" + i;
+    }
+
+    @Setup(Level.Invocation)
+    public void empty() {
+        il = new InterlockingImpl(sc.topo);
+        for (int d : sc.dest) il.routing.tree(d);
+    }
+
+    @Benchmark
+    public InterlockingImpl addAll() {
+        for (int i = 0; i < names.length; i++) il.addTrain(names[i], sc.entry[i], sc.dest[i]);
+        return il;
+    }
+}
@@ -0,0 +1,83 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One {@code moveTrains} tick over every train in the corridor, through the name API
+ * and the handle API.
+ *
+ * In free-flowing traffic trains reach their exits and leave; the live list is trimmed
+ * when that happens, and once fewer than half remain the placement is seeded again, so
+ * both costs are part of the measurement. Congested scenarios never change state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class MoveTrainsBench {
+
+    @Param({"corridor", "grid-100", "grid-10k", "grid-100k", "ladder-100", "ladder-10k", "ladder-100k"})
+    public String scenario;
+
+    @Param({"1", "1000", "50000"})
+    public int trains;
+
+    @Param({"free", "congested"})
+    public String traffic;
+
+    private Scenario sc;
+    private InterlockingImpl il;
+    private int[] live;
+    private String[] names;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sc = Scenario.of(scenario, trains, traffic);
+        il = sc.engine();                       // seeds round 0: handles 0..trains-1
+        live = new int[sc.trains()];
+        for (int h = 0; h < live.length; h++) live[h] = h;
+        names();
+    }
+
+    @Benchmark
+    public int byName() {
+        int moved = il.moveTrains(names);
+        trim(moved);
+        return moved;
+    }
+
+    @Benchmark
+    public int byHandle() {
+        int moved = il.moveTrains(live);
+        trim(moved);
+        return moved;
+    }
+
+    private void trim(int moved) {
+        if (moved == 0) return;
+        int n = 0;
+        for (int h : live) if (il.getTrain(h) >= 0) n++;
+        if (n == live.length) return;
+        int[] next = new int[n];
+        n = 0;
+        for (int h : live) if (il.getTrain(h) >= 0) next[n++] = h;
+        if (2 * n < sc.trains()) {
+            int[] added = sc.seed(il, ++round);
+            next = Arrays.copyOf(next, n + added.length);
+            System.arraycopy(added, 0, next, n, added.length);
+        }
+        live = next;
+        names();
+    }
+
+    private void names() {
+        names = new String[live.length];
+        for (int i = 0; i < live.length; i++) names[i] = il.trainName(live[i]);
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Point reads on a populated engine: {@code getSection}/{@code getTrain} through the
+ * name API and their handle counterparts, at pseudo-random sections and trains.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ReadBench {
+
+    @Param({"corridor", "grid-10k", "grid-100k", "ladder-100k"})
+    public String scenario;
+
+    @Param({"1000", "50000"})
+    public int trains;
+
+    private static final int MASK = 4095;
+
+    private InterlockingImpl il;
+    private final int[] sections = new int[MASK + 1], handles = new int[MASK + 1];
+    private final String[] names = new String[MASK + 1];
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Scenario sc = Scenario.of(scenario, trains, "congested");
+        il = sc.engine();
+        Random rnd = new Random(42);
+        for (int k = 0; k <= MASK; k++) {
+            sections[k] = sc.topo.min() + rnd.nextInt(sc.topo.sections());
+            handles[k] = rnd.nextInt(sc.trains());
+            names[k] = il.trainName(handles[k]);
+        }
+    }
+
+    @Benchmark
+    public String getSection() { return il.getSection(sections[i++ & MASK]); }
+
+    @Benchmark
+    public int getSectionHandle() { return il.getSectionHandle(sections[i++ & MASK]); }
+
+    @Benchmark
+    public int getTrainByName() { return il.getTrain(names[i++ & MASK]); }
+
+    @Benchmark
+    public int getTrainByHandle() { return il.getTrain(handles[i++ & MASK]); }
+}
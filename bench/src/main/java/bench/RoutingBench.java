@@ -0,0 +1,39 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The BFS behind routing: building one destination's next-hop tree from scratch,
+ * cycling through the scenario's exits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class RoutingBench {
+
+    @Param({"corridor", "grid-100", "grid-10k", "grid-100k", "ladder-100", "ladder-10k", "ladder-100k"})
+    public String scenario;
+
+    private Topology topo;
+    private int[] exits;
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        topo = Scenario.of(scenario, 0, "free").topo;
+        int n = 0;
+        int[] e = new int[topo.sections()];
+        for (int s = topo.min(); s <= topo.max(); s++) if (topo.isExit(s)) e[n++] = s;
+        exits = java.util.Arrays.copyOf(e, n);
+    }
+
+    @Benchmark
+    public int[] bfs() {
+        return new Routing(topo).tree(exits[i++ % exits.length]);
+    }
+}
@@ -0,0 +1,121 @@
+package bench;
+
+import java.util.Arrays;
+
+/**
+ * Topologies and train placements shared by the JMH benchmarks.
+ *
+ * A scenario is a topology plus a set of lanes: straight runs of sections with an exit
+ * at each end (grid rows, ladder rails). Trains are laid along lanes one lane at a time:
+ * <ul>
+ *   <li>{@code free}: every other section, all heading for the lane's far end, so every
+ *       train moves every tick until it exits;</li>
+ *   <li>{@code congested}: every section, neighbours heading opposite ways, so each
+ *       intent is half of a head-on swap and nothing moves.</li>
+ * </ul>
+ * If the lanes cannot hold the requested number of trains, the scenario holds as many
+ * as fit; {@link #trains()} reports the real count.
+ *
+ * Names: {@code corridor}, {@code grid-100}, {@code grid-10k}, {@code grid-100k},
+ * {@code ladder-100}, {@code ladder-10k}, {@code ladder-100k}.
+ */
+final class Scenario {
+
+    final Topology topo;
+    final int[] entry, dest;            // one per train
+
+    private Scenario(Topology topo, int[][] lanes, int trains, boolean congested){
+        this.topo=topo;
+        int[] e=new int[trains], d=new int[trains];
+        int n=0;
+        for (int[] lane: lanes){
+            int last=lane.length-1;
+            for (int i=0;i<lane.length && n<trains;i+=congested ? 1 : 2){
+                e[n]=lane[i];
+                d[n]=congested && (i&1)==1 ? lane[0] : lane[last];
+                n++;
+            }
+        }
+        entry=Arrays.copyOf(e,n); dest=Arrays.copyOf(d,n);
+    }
+
+    int trains(){ return entry.length; }
+
+    static Scenario of(String name, int trains, String traffic){
+        boolean congested;
+        switch (traffic){
+            case "free": congested=false; break;
+            case "congested": congested=true; break;
+            default: throw new IllegalArgumentException("traffic must be free or congested: "+traffic);
+        }
+        if (name.equals("corridor")) return corridor(trains, congested);
+        int dash=name.indexOf('-');
+        if (dash<0) throw new IllegalArgumentException("unknown scenario: "+name);
+        int sections=size(name.substring(dash+1));
+        switch (name.substring(0,dash)){
+            case "grid":   return grid((int)Math.round(Math.sqrt(sections)), trains, congested);
+            case "ladder": return ladder(sections/2, trains, congested);
+            default: throw new IllegalArgumentException("unknown scenario: "+name);
+        }
+    }
+
+    private static int size(String s){
+        return s.endsWith("k") ? 1_000*Integer.parseInt(s.substring(0,s.length()-1)) : Integer.parseInt(s);
+    }
+
+    /** Stock corridor; the west and east passenger lines and the freight line are the lanes. */
+    static Scenario corridor(int trains, boolean congested){
+        return new Scenario(Topology.corridor(), new int[][] {{1,5,9,8}, {2,6,10}, {3,7,11}}, trains, congested);
+    }
+
+    /**
+     * side x side grid, exits all round the border; every row is a lane. Unlike the test
+     * grid (fixtures/Grids) it has no crossing diagonals, so these runs time plain movement
+     * and stay comparable with earlier results; crossings are timed on the corridor.
+     */
+    static Scenario grid(int side, int trains, boolean congested){
+        Topology.Builder b=new Topology.Builder(0, side*side-1);
+        int[][] lanes=new int[side][side];
+        for (int r=0;r<side;r++) for (int c=0;c<side;c++){
+            int s=r*side+c;
+            lanes[r][c]=s;
+            if (c+1<side) b.link(s,s+1);
+            if (r+1<side) b.link(s,s+side);
+            if (r==0 || c==0 || r==side-1 || c==side-1) b.exit(s);
+        }
+        return new Scenario(b.build(), lanes, trains, congested);
+    }
+
+    /** Two rails of the given length joined by a rung every 4 sections; each rail is a lane. */
+    static Scenario ladder(int length, int trains, boolean congested){
+        Topology.Builder b=new Topology.Builder(0, 2*length-1);
+        int[][] lanes=new int[2][length];
+        for (int i=0;i<length;i++){
+            lanes[0][i]=i; lanes[1][i]=length+i;
+            if (i+1<length) b.link(i,i+1).link(length+i,length+i+1);
+            if (i%4==0) b.link(i,length+i);
+        }
+        b.exit(0).exit(length-1).exit(length).exit(2*length-1);
+        return new Scenario(b.build(), lanes, trains, congested);
+    }
+
+    /** A fresh engine with the trees for every destination in use built and all trains placed. */
+    InterlockingImpl engine(){
+        InterlockingImpl il=new InterlockingImpl(topo);
+        for (int d: dest) il.routing.tree(d);
+        seed(il, 0);
+        return il;
+    }
+
+    /**
+     * Adds every train of the placement whose entry is free, named {@code round:i};
+     * returns the handles added.
+     */
+    int[] seed(InterlockingImpl il, int round){
+        int[] hs=new int[entry.length];
+        int n=0;
+        for (int i=0;i<entry.length;i++)
+            if (il.getSectionHandle(entry[i])<0) hs[n++]=il.addTrainHandle(round+":"+i, entry[i], dest[i]);
+        return Arrays.copyOf(hs,n);
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Grid topologies shared by the tests and the bench tools (the build adds this directory
+ * to both; it is not part of the engine).
+ */
+final class Grids {
+
+    private Grids() { }
+
+    /**
+     * w×w grid: sections numbered row by row from 0, exits all round the border, and an X
+     * of crossing diagonals in every fourth square.
+     */
+    static Topology grid(int w) {
+        if (w < 2) throw new IllegalArgumentException("grid must be at least 2 wide");
+        Topology.Builder b = new Topology.Builder(0, w * w - 1);
+        for (int r = 0; r < w; r++) for (int c = 0; c < w; c++) {
+            int s = r * w + c;
+            if (c + 1 < w) b.link(s, s + 1);
+            if (r + 1 < w) b.link(s, s + w);
+            if (r == 0 || c == 0 || r == w - 1 || c == w - 1) b.exit(s);
+            if (r + 1 < w && c + 1 < w && (r + c) % 4 == 0) {
+                b.link(s, s + w + 1).link(s + 1, s + w);
+                b.cross(s, s + w + 1, s + 1, s + w);
+            }
+        }
+        return b.build();
+    }
+}